@@ -35,6 +35,12 @@ import io.arachn.spi.model.UnwoundLink;
 import io.arachn.spi.model.UnwoundLinkBatch;
 
 public interface ArachnioClient {
+  /**
+   * Does the one-time work that would otherwise slow down the first requests, e.g., building
+   * serializers and opening connections. Calling it is optional. The default does nothing.
+   */
+  default void warmUp() {}
+
   default ParsedDomainName parseDomainName(String hostname) {
     return parseDomainName(new DomainName().hostname(hostname));
   }
@@ -0,0 +1,559 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.bulk;
+
+import static java.util.Objects.requireNonNull;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.arachn.arachnio4j.ArachnioClient;
+import io.arachn.arachnio4j.util.Jackson;
+import io.arachn.arachnio4j.util.UrlCanonicalizer;
+import io.arachn.spi.model.LinkBatch;
+import io.arachn.spi.model.LinkBatchEntry;
+
+/**
+ * Runs every link in an input file through the Arachnio API and writes the results to an output
+ * file, in one pass and with memory proportional to the chunk size, not the file size.
+ *
+ * <p>
+ * Each non-blank input line is either a bare URL, or a JSON object with a {@code url} field and an
+ * optional {@code id} field. Bare URLs, and objects without an id, get their 1-based line number as
+ * their id. Every {@code chunkSize} non-blank lines form a chunk.
+ *
+ * <p>
+ * Each output line is a JSON object. For {@link Operation#PARSE} and {@link Operation#UNWIND}, it
+ * is one entry of the batch response, exactly as the API returned it. For
+ * {@link Operation#EXTRACT}, which has no batch endpoint, it has the fields {@code id},
+ * {@code url}, and {@code result}. Entries that fail have the fields {@code id}, {@code url}, and
+ * {@code error} instead. Within a chunk, errors for invalid input lines come first.
+ *
+ * <p>
+ * Jobs run with a {@link ProgressJournal} can be resumed after a crash. Completed chunks are not
+ * sent again, and chunks that failed with errors that may be transient, like server errors, are
+ * retried. Such chunks are not written to the output until they succeed. Because the journal tracks
+ * whole chunks, an {@link Operation#EXTRACT} chunk first retries its failed entries, up to
+ * {@link #EXTRACT_ATTEMPTS} times in all, so that one transient failure does not throw away the
+ * rest of the chunk's results.
+ *
+ * <p>
+ * Jobs run with a {@link SeenUrlFilter} drop entries whose canonical URL, per
+ * {@link UrlCanonicalizer#DEFAULT}, the filter has already seen, in this run or an earlier one.
+ * Dropped entries are counted in {@link BulkSummary#getSeen()} and have no output line. Entries
+ * are added to the filter only once their output is durable, i.e., after the output and journal
+ * are synced, so a crash never leaves the filter holding entries whose results were lost. A chunk
+ * that fails with a transient error is not considered seen. Without a journal, the output is
+ * flushed, but not synced, before entries are added.
+ */
+public class BulkLinkProcessor {
+  public static final int DEFAULT_CHUNK_SIZE = 100;
+
+  /**
+   * The default number of chunks between fsyncs of the output and journal
+   */
+  public static final int DEFAULT_SYNC_INTERVAL = 16;
+
+  /**
+   * The number of times an {@link Operation#EXTRACT extract} that fails with a transient error is
+   * tried within its chunk before the whole chunk is left for a later run
+   */
+  public static final int EXTRACT_ATTEMPTS = 3;
+
+  public static enum Operation {
+    /**
+     * @see ArachnioClient#parseLinkBatch(LinkBatch)
+     */
+    PARSE,
+
+    /**
+     * @see ArachnioClient#unwindLinkBatch(LinkBatch)
+     */
+    UNWIND,
+
+    /**
+     * @see ArachnioClient#extractLink(io.arachn.spi.model.Link)
+     */
+    EXTRACT;
+  }
+
+  private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+  private final ArachnioClient client;
+  private final int chunkSize;
+  private final int parallelism;
+  private final int syncInterval;
+  private final SeenUrlFilter seen;
+
+  public BulkLinkProcessor(ArachnioClient client) {
+    this(client, DEFAULT_CHUNK_SIZE, 1);
+  }
+
+  public BulkLinkProcessor(ArachnioClient client, int chunkSize, int parallelism) {
+    this(client, chunkSize, parallelism, DEFAULT_SYNC_INTERVAL);
+  }
+
+  /**
+   * @param chunkSize the number of entries per batch request
+   * @param parallelism the number of concurrent {@link ArachnioClient#extractLink extract}
+   *        requests per chunk. Batch operations send one request per chunk regardless.
+   * @param syncInterval the number of chunks between fsyncs when running with a journal, and
+   *        between updates of the seen filter. At most this many chunks are repeated after a
+   *        crash.
+   */
+  public BulkLinkProcessor(ArachnioClient client, int chunkSize, int parallelism,
+      int syncInterval) {
+    this(client, chunkSize, parallelism, syncInterval, null);
+  }
+
+  /**
+   * @param seen the filter of URLs to skip, or null to process every entry. The caller owns the
+   *        filter and must close it.
+   */
+  public BulkLinkProcessor(ArachnioClient client, int chunkSize, int parallelism,
+      int syncInterval, SeenUrlFilter seen) {
+    if (chunkSize < 1)
+      throw new IllegalArgumentException("chunkSize must be positive");
+    if (parallelism < 1)
+      throw new IllegalArgumentException("parallelism must be positive");
+    if (syncInterval < 1)
+      throw new IllegalArgumentException("syncInterval must be positive");
+    this.client = requireNonNull(client);
+    this.chunkSize = chunkSize;
+    this.parallelism = parallelism;
+    this.syncInterval = syncInterval;
+    this.seen = seen;
+  }
+
+  public BulkSummary process(Operation operation, Path input, Path output) throws IOException {
+    try (OutputStream out = Files.newOutputStream(output)) {
+      return process(operation, input, out);
+    }
+  }
+
+  public BulkSummary process(Operation operation, Path input, OutputStream output)
+      throws IOException {
+    try (MappedLineReader reader = new MappedLineReader(input);
+        NdjsonWriter writer = new NdjsonWriter(output)) {
+      return run(operation, reader, writer, null);
+    }
+  }
+
+  /**
+   * Runs the job, recording progress in the given journal. If the journal already has progress
+   * for this job, then only the remaining work is done, and the results are appended to the
+   * output. Otherwise, the output is overwritten. The input must not change between runs.
+   *
+   * @throws IOException if the journal belongs to a job with a different operation or chunk size
+   */
+  public BulkSummary process(Operation operation, Path input, Path output, Path journal)
+      throws IOException {
+    try (ProgressJournal progress = ProgressJournal.open(journal, chunkSize, operation.ordinal());
+        FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE);
+        MappedLineReader reader = new MappedLineReader(input)) {
+      ProgressJournal.State state = progress.getState();
+
+      // Drop whatever chunks in flight during the last run managed to write
+      if (channel.size() < state.getOutputEnd())
+        throw new IOException("output is shorter than progress journal expects");
+      channel.truncate(state.getOutputEnd());
+      channel.position(state.getOutputEnd());
+
+      reader.seek(state.getPrefixInputEnd(), state.getPrefixLineEnd());
+
+      try (NdjsonWriter writer =
+          new NdjsonWriter(Channels.newOutputStream(channel), state.getOutputEnd())) {
+        return run(operation, reader, writer, new Checkpoint(progress, channel));
+      }
+    }
+  }
+
+  private BulkSummary run(Operation operation, MappedLineReader reader, NdjsonWriter writer,
+      Checkpoint checkpoint) throws IOException {
+    ExecutorService executor = null;
+    if (operation == Operation.EXTRACT && parallelism > 1)
+      executor = Executors.newFixedThreadPool(parallelism);
+    try {
+      Counts counts = new Counts();
+      long chunk = 0L;
+      if (checkpoint != null) {
+        chunk = checkpoint.state.getPrefixChunks();
+        counts.entries = checkpoint.state.getCompletedEntries();
+        counts.skipped = checkpoint.state.getCompletedEntries();
+      }
+
+      List<Line> lines = new ArrayList<>(chunkSize);
+      long inputStart = reader.getPosition();
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        String trimmed = line.strip();
+        if (trimmed.isEmpty())
+          continue;
+
+        lines.add(new Line(reader.getLineNumber(), trimmed));
+        if (lines.size() == chunkSize) {
+          processChunk(operation, chunk, inputStart, reader, lines, writer, executor, checkpoint,
+              counts);
+          chunk = chunk + 1;
+          lines.clear();
+          inputStart = reader.getPosition();
+        }
+      }
+      if (!lines.isEmpty())
+        processChunk(operation, chunk, inputStart, reader, lines, writer, executor, checkpoint,
+            counts);
+
+      sync(writer, checkpoint, counts);
+
+      return new BulkSummary(counts.entries, counts.chunks, counts.successes, counts.failures,
+          counts.skipped, counts.seen);
+    } finally {
+      if (executor != null)
+        executor.shutdownNow();
+    }
+  }
+
+  private void processChunk(Operation operation, long chunk, long inputStart,
+      MappedLineReader reader, List<Line> lines, NdjsonWriter writer, ExecutorService executor,
+      Checkpoint checkpoint, Counts counts) throws IOException {
+    // Completed in an earlier run, and already counted
+    if (checkpoint != null && checkpoint.state.isCompleted(chunk))
+      return;
+
+    counts.entries = counts.entries + lines.size();
+    counts.chunks = counts.chunks + 1;
+
+    ChunkResult result = new ChunkResult(lines.size());
+    List<LinkBatchEntry> entries = new ArrayList<>(lines.size());
+    Set<String> keys = seen != null ? new HashSet<>() : null;
+    int dropped = 0;
+    for (Line line : lines) {
+      String defaultId = Long.toString(line.number);
+      LinkBatchEntry entry;
+      try {
+        entry = parseEntry(line.text, defaultId);
+      } catch (IllegalArgumentException e) {
+        result.failure(error(defaultId, null, e));
+        continue;
+      }
+
+      if (keys != null) {
+        String key = UrlCanonicalizer.DEFAULT.canonicalize(entry.getUrl());
+        if (seen.mightContain(key) || counts.unsyncedKeys.contains(key) || !keys.add(key)) {
+          dropped = dropped + 1;
+          continue;
+        }
+      }
+
+      entries.add(entry);
+    }
+
+    if (!entries.isEmpty()) {
+      switch (operation) {
+        case PARSE:
+        case UNWIND:
+          callBatch(operation, entries, result);
+          break;
+        case EXTRACT:
+          callExtract(entries, executor, result);
+          break;
+        default:
+          throw new AssertionError(operation);
+      }
+    }
+
+    counts.seen = counts.seen + dropped;
+
+    if (checkpoint != null && result.retryable) {
+      checkpoint.journal.failed(chunk, lines.size(), inputStart, reader.getPosition(),
+          reader.getLineNumber());
+      counts.failures = counts.failures + lines.size() - dropped;
+    } else {
+      long outputStart = writer.getPosition();
+      for (JsonNode record : result.records)
+        writer.write(record);
+      counts.successes = counts.successes + result.successes;
+      counts.failures = counts.failures + result.failures;
+      if (checkpoint != null)
+        checkpoint.journal.completed(chunk, lines.size(), inputStart, reader.getPosition(),
+            reader.getLineNumber(), outputStart, writer.getPosition());
+      if (keys != null)
+        counts.unsyncedKeys.addAll(keys);
+    }
+
+    counts.unsyncedChunks = counts.unsyncedChunks + 1;
+    if (counts.unsyncedChunks >= syncInterval)
+      sync(writer, checkpoint, counts);
+  }
+
+  /**
+   * Makes the output durable, then the journal records that point into it, and then the filter
+   * entries for it
+   */
+  private void sync(NdjsonWriter writer, Checkpoint checkpoint, Counts counts)
+      throws IOException {
+    if (checkpoint != null)
+      checkpoint.sync(writer);
+    else if (!counts.unsyncedKeys.isEmpty())
+      writer.flush();
+
+    if (!counts.unsyncedKeys.isEmpty()) {
+      for (String key : counts.unsyncedKeys)
+        seen.add(key);
+      seen.sync();
+      counts.unsyncedKeys.clear();
+    }
+
+    counts.unsyncedChunks = 0;
+  }
+
+  private void callBatch(Operation operation, List<LinkBatchEntry> entries, ChunkResult result) {
+    LinkBatch batch = new LinkBatch().entries(entries);
+
+    Object response;
+    try {
+      if (operation == Operation.PARSE)
+        response = client.parseLinkBatch(batch);
+      else
+        response = client.unwindLinkBatch(batch);
+    } catch (RuntimeException e) {
+      for (LinkBatchEntry entry : entries)
+        result.failure(error(entry.getId(), entry.getUrl(), e));
+      if (isRetryable(e))
+        result.retryable = true;
+      return;
+    }
+
+    // Write the response entries as-is. Parse and unwind batches have different entry types, and
+    // each entry becomes its own JSON line anyway, so one tree walk handles both.
+    JsonNode responseEntries = Jackson.MAPPER.valueToTree(response).path("entries");
+    for (Iterator<JsonNode> i = responseEntries.elements(); i.hasNext();)
+      result.success(i.next());
+  }
+
+  private void callExtract(List<LinkBatchEntry> entries, ExecutorService executor,
+      ChunkResult result) throws IOException {
+    JsonNode[] records = new JsonNode[entries.size()];
+    boolean[] succeeded = new boolean[entries.size()];
+
+    // Each round retries only the entries whose last failure might be transient
+    List<Integer> pending = new ArrayList<>(entries.size());
+    for (int i = 0; i < entries.size(); i++)
+      pending.add(i);
+    for (int attempt = 1; attempt <= EXTRACT_ATTEMPTS && !pending.isEmpty(); attempt++) {
+      List<Integer> failed = new ArrayList<>();
+      List<Throwable> causes = extract(entries, pending, executor, records, succeeded);
+      for (int i = 0; i < pending.size(); i++) {
+        int index = pending.get(i);
+        Throwable cause = causes.get(i);
+        if (cause == null)
+          continue;
+        LinkBatchEntry entry = entries.get(index);
+        records[index] = error(entry.getId(), entry.getUrl(), cause);
+        if (isRetryable(cause))
+          failed.add(index);
+      }
+      pending = failed;
+    }
+    if (!pending.isEmpty())
+      result.retryable = true;
+
+    for (int i = 0; i < records.length; i++) {
+      if (succeeded[i])
+        result.success(records[i]);
+      else
+        result.failure(records[i]);
+    }
+  }
+
+  /**
+   * Extracts the given entries, storing the record of each success.
+   *
+   * @return the cause of each failure, or null for each success, in the order of the indexes
+   */
+  private List<Throwable> extract(List<LinkBatchEntry> entries, List<Integer> indexes,
+      ExecutorService executor, JsonNode[] records, boolean[] succeeded) throws IOException {
+    List<Throwable> result = new ArrayList<>(indexes.size());
+    if (executor == null) {
+      for (int index : indexes) {
+        LinkBatchEntry entry = entries.get(index);
+        try {
+          records[index] = result(entry, client.extractLink(entry.getUrl()));
+          succeeded[index] = true;
+          result.add(null);
+        } catch (RuntimeException e) {
+          result.add(e);
+        }
+      }
+      return result;
+    }
+
+    List<Future<Object>> futures = new ArrayList<>(indexes.size());
+    for (int index : indexes) {
+      LinkBatchEntry entry = entries.get(index);
+      futures.add(executor.submit(() -> client.extractLink(entry.getUrl())));
+    }
+
+    for (int i = 0; i < indexes.size(); i++) {
+      int index = indexes.get(i);
+      try {
+        records[index] = result(entries.get(index), futures.get(i).get());
+        succeeded[index] = true;
+        result.add(null);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      } catch (ExecutionException e) {
+        result.add(e.getCause());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Bad input will be just as bad next time. Anything else might work on retry.
+   */
+  private static boolean isRetryable(Throwable e) {
+    return !(e instanceof IllegalArgumentException);
+  }
+
+  /**
+   * @throws IllegalArgumentException if the line is not a valid entry
+   */
+  /* default */ static LinkBatchEntry parseEntry(String line, String defaultId) {
+    if (line.charAt(0) != '{')
+      return new LinkBatchEntry().id(defaultId).url(line);
+
+    JsonNode node;
+    try {
+      node = Jackson.MAPPER.readTree(line);
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("invalid json", e);
+    }
+
+    JsonNode url = node.path("url");
+    if (!url.isTextual())
+      throw new IllegalArgumentException("missing url");
+
+    JsonNode id = node.path("id");
+    return new LinkBatchEntry().id(id.isTextual() || id.isNumber() ? id.asText() : defaultId)
+        .url(url.asText());
+  }
+
+  private static JsonNode result(LinkBatchEntry entry, Object result) {
+    ObjectNode node = NODES.objectNode();
+    node.put("id", entry.getId());
+    node.put("url", entry.getUrl());
+    node.set("result", Jackson.MAPPER.valueToTree(result));
+    return node;
+  }
+
+  private static JsonNode error(String id, String url, Throwable e) {
+    ObjectNode node = NODES.objectNode();
+    node.put("id", id);
+    node.put("url", url);
+    node.put("error", String.valueOf(e.getMessage()));
+    return node;
+  }
+
+  private static final class Line {
+    public final long number;
+    public final String text;
+
+    public Line(long number, String text) {
+      this.number = number;
+      this.text = text;
+    }
+  }
+
+  private static final class ChunkResult {
+    public final List<JsonNode> records;
+    public int successes;
+    public int failures;
+    public boolean retryable;
+
+    public ChunkResult(int size) {
+      this.records = new ArrayList<>(size);
+    }
+
+    public void success(JsonNode record) {
+      records.add(record);
+      successes = successes + 1;
+    }
+
+    public void failure(JsonNode record) {
+      records.add(record);
+      failures = failures + 1;
+    }
+  }
+
+  private static final class Checkpoint {
+    public final ProgressJournal journal;
+    public final ProgressJournal.State state;
+    public final FileChannel output;
+
+    public Checkpoint(ProgressJournal journal, FileChannel output) {
+      this.journal = journal;
+      this.state = journal.getState();
+      this.output = output;
+    }
+
+    /**
+     * The output must be durable before the journal records that point into it.
+     */
+    public void sync(NdjsonWriter writer) throws IOException {
+      writer.flush();
+      output.force(false);
+      journal.sync();
+    }
+  }
+
+  private static final class Counts {
+    public long entries;
+    public long chunks;
+    public long successes;
+    public long failures;
+    public long skipped;
+    public long seen;
+    public int unsyncedChunks;
+
+    /**
+     * The canonical URLs of entries written since the last sync, which are not in the filter yet
+     */
+    public final Set<String> unsyncedKeys = new HashSet<>();
+  }
+}
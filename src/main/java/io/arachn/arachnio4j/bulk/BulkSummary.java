@@ -0,0 +1,90 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.bulk;
+
+/**
+ * Counts from one {@link BulkLinkProcessor} run.
+ */
+public class BulkSummary {
+  private final long entries;
+  private final long chunks;
+  private final long successes;
+  private final long failures;
+  private final long skipped;
+  private final long seen;
+
+  public BulkSummary(long entries, long chunks, long successes, long failures, long skipped,
+      long seen) {
+    this.entries = entries;
+    this.chunks = chunks;
+    this.successes = successes;
+    this.failures = failures;
+    this.skipped = skipped;
+    this.seen = seen;
+  }
+
+  /**
+   * @return the number of non-blank input lines, including skipped ones
+   */
+  public long getEntries() {
+    return entries;
+  }
+
+  /**
+   * @return the number of chunks processed in this run
+   */
+  public long getChunks() {
+    return chunks;
+  }
+
+  /**
+   * @return the number of entries written with a result
+   */
+  public long getSuccesses() {
+    return successes;
+  }
+
+  /**
+   * @return the number of entries written with an error, or left to retry in a later run
+   */
+  public long getFailures() {
+    return failures;
+  }
+
+  /**
+   * @return the number of entries skipped because an earlier run already completed them
+   */
+  public long getSkipped() {
+    return skipped;
+  }
+
+  /**
+   * @return the number of entries dropped because the {@link SeenUrlFilter} had already seen them
+   */
+  public long getSeen() {
+    return seen;
+  }
+
+  @Override
+  public String toString() {
+    return "BulkSummary [entries=" + entries + ", chunks=" + chunks + ", successes=" + successes
+        + ", failures=" + failures + ", skipped=" + skipped + ", seen=" + seen + "]";
+  }
+}
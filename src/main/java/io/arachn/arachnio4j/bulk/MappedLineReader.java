@@ -0,0 +1,157 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads UTF-8 lines from a file through a sliding memory-mapped window, so arbitrarily large files
+ * can be read in one pass with constant heap usage. Lines may end with {@code \n} or
+ * {@code \r\n}. The terminator is not included in the returned line.
+ */
+public class MappedLineReader implements Closeable {
+  public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  private final FileChannel channel;
+  private final long size;
+  private final int windowSize;
+  private ByteBuffer window;
+  private long windowStart;
+  private long position;
+  private long lineNumber;
+  private byte[] scratch = new byte[256];
+
+  public MappedLineReader(Path path) throws IOException {
+    this(path, DEFAULT_WINDOW_SIZE);
+  }
+
+  public MappedLineReader(Path path, int windowSize) throws IOException {
+    if (windowSize < 1)
+      throw new IllegalArgumentException("windowSize must be positive");
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    this.size = channel.size();
+    this.windowSize = windowSize;
+  }
+
+  /**
+   * @return the next line, or null at end of file
+   */
+  public String readLine() throws IOException {
+    if (position >= size)
+      return null;
+
+    int length = windowSize;
+    while (true) {
+      if (window == null || position < windowStart
+          || position - windowStart >= window.limit())
+        map(position, length);
+
+      int start = (int) (position - windowStart);
+      int limit = window.limit();
+      int end = start;
+      while (end < limit && window.get(end) != '\n')
+        end = end + 1;
+
+      boolean terminated = end < limit;
+      if (terminated || windowStart + limit == size) {
+        String result = decode(start, end);
+        position = windowStart + end + (terminated ? 1 : 0);
+        lineNumber = lineNumber + 1;
+        return result;
+      }
+
+      // The line runs off the end of the window. Slide the window to the start of the line, and
+      // if it's already there, the line is longer than the window, so grow it.
+      if (start == 0) {
+        if (limit == Integer.MAX_VALUE)
+          throw new IOException("line too long at byte " + position);
+        length = (int) Math.min(2L * limit, Integer.MAX_VALUE);
+      }
+      window = null;
+    }
+  }
+
+  /**
+   * Moves to the given byte offset, which must be the start of a line.
+   *
+   * @param lineNumber the number of lines before the given position
+   */
+  public void seek(long position, long lineNumber) {
+    if (position < 0L || position > size)
+      throw new IllegalArgumentException("position out of range");
+    if (lineNumber < 0L)
+      throw new IllegalArgumentException("lineNumber must not be negative");
+    this.position = position;
+    this.lineNumber = lineNumber;
+  }
+
+  /**
+   * @return the byte offset of the next line in the file
+   */
+  public long getPosition() {
+    return position;
+  }
+
+  /**
+   * @return the number of lines read so far
+   */
+  public long getLineNumber() {
+    return lineNumber;
+  }
+
+  /**
+   * @return the size of the file in bytes
+   */
+  public long getSize() {
+    return size;
+  }
+
+  @Override
+  public void close() throws IOException {
+    window = null;
+    channel.close();
+  }
+
+  private void map(long start, int length) throws IOException {
+    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start,
+        Math.min((long) length, size - start));
+    window = mapped;
+    windowStart = start;
+  }
+
+  private String decode(int start, int end) {
+    if (end > start && window.get(end - 1) == '\r')
+      end = end - 1;
+    int length = end - start;
+    if (scratch.length < length)
+      scratch = new byte[Math.max(length, 2 * scratch.length)];
+    ByteBuffer view = window.duplicate();
+    view.position(start);
+    view.get(scratch, 0, length);
+    return new String(scratch, 0, length, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,112 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.bulk;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.arachn.arachnio4j.util.Jackson;
+
+/**
+ * Writes one JSON value per line through a single streaming {@link JsonGenerator}, so no value is
+ * ever materialized as a {@link String}. Closing the writer flushes it but does not close the
+ * underlying stream, which still belongs to the caller.
+ */
+public class NdjsonWriter implements Closeable, Flushable {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final BufferedOutputStream buffer;
+  private final CountingOutputStream counter;
+  private final JsonGenerator generator;
+  private final long initialPosition;
+
+  public NdjsonWriter(OutputStream out) throws IOException {
+    this(out, 0L);
+  }
+
+  /**
+   * @param initialPosition the number of bytes already in the destination, e.g., when appending
+   *        to an existing file
+   */
+  public NdjsonWriter(OutputStream out, long initialPosition) throws IOException {
+    this.buffer = new BufferedOutputStream(out, BUFFER_SIZE);
+    this.counter = new CountingOutputStream(buffer);
+    // By default, Jackson writes a space between root values, which would start every line but
+    // the first with a space
+    this.generator = Jackson.MAPPER.getFactory().createGenerator(counter, JsonEncoding.UTF8)
+        .setRootValueSeparator(null).disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM)
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    this.initialPosition = initialPosition;
+  }
+
+  /**
+   * Writes the given value, which may be a model object or a
+   * {@link com.fasterxml.jackson.databind.JsonNode}, followed by a newline.
+   */
+  public void write(Object value) throws IOException {
+    generator.writeObject(value);
+    generator.writeRaw('\n');
+  }
+
+  /**
+   * @return the offset in the destination just past the last value written
+   */
+  public long getPosition() throws IOException {
+    generator.flush();
+    return initialPosition + counter.count;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    generator.flush();
+    buffer.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    generator.close();
+    buffer.flush();
+  }
+
+  private static final class CountingOutputStream extends FilterOutputStream {
+    public long count;
+
+    public CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count = count + 1;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count = count + len;
+    }
+  }
+}
@@ -0,0 +1,310 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of which chunks of a bulk job have finished, and where their results are in
+ * the output file. Each record has a fixed size and its own checksum, so a record torn by a crash
+ * is detected and discarded on replay. Records are buffered and only reach the disk on
+ * {@link #sync()}, so the cost of {@code fsync} is paid once per batch of chunks rather than once
+ * per chunk. The buffer grows to hold every record appended between syncs, because a record that
+ * reached the disk early could point at output that was never made durable.
+ *
+ * <p>
+ * Replay is a single sequential read of the file. At 57 bytes per chunk, the journal for a job of
+ * 100 million entries in chunks of 100 is about 57MB.
+ */
+public class ProgressJournal implements Closeable {
+  private static final int MAGIC = 0x41524A4C;
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 16;
+
+  private static final byte COMPLETED = 1;
+
+  private static final byte FAILED = 2;
+
+  /* default */ static final int RECORD_SIZE = 1 + 8 + 4 + 8 + 8 + 8 + 8 + 8 + 4;
+
+  private static final int BUFFER_RECORDS = 1024;
+
+  /**
+   * What a previous run of the job accomplished.
+   */
+  public static final class State {
+    private final BitSet completed;
+    private final long completedEntries;
+    private final long prefixChunks;
+    private final long prefixInputEnd;
+    private final long prefixLineEnd;
+    private final long outputEnd;
+
+    public State(BitSet completed, long completedEntries, long prefixChunks, long prefixInputEnd,
+        long prefixLineEnd, long outputEnd) {
+      this.completed = completed;
+      this.completedEntries = completedEntries;
+      this.prefixChunks = prefixChunks;
+      this.prefixInputEnd = prefixInputEnd;
+      this.prefixLineEnd = prefixLineEnd;
+      this.outputEnd = outputEnd;
+    }
+
+    public boolean isCompleted(long chunk) {
+      return chunk <= Integer.MAX_VALUE && completed.get((int) chunk);
+    }
+
+    /**
+     * @return the total number of entries in completed chunks
+     */
+    public long getCompletedEntries() {
+      return completedEntries;
+    }
+
+    /**
+     * @return the number of leading chunks that are all completed. Processing can resume after
+     *         them without reading them at all.
+     */
+    public long getPrefixChunks() {
+      return prefixChunks;
+    }
+
+    /**
+     * @return the input byte offset just past the completed prefix
+     */
+    public long getPrefixInputEnd() {
+      return prefixInputEnd;
+    }
+
+    /**
+     * @return the number of input lines in the completed prefix
+     */
+    public long getPrefixLineEnd() {
+      return prefixLineEnd;
+    }
+
+    /**
+     * @return the output byte offset just past the last completed chunk. Anything after this was
+     *         written by a chunk that never finished.
+     */
+    public long getOutputEnd() {
+      return outputEnd;
+    }
+  }
+
+  /**
+   * Opens the journal at the given path, creating it if necessary, and replays it.
+   *
+   * @param chunkSize the chunk size of the job. Must match the journal, if it exists.
+   * @param jobType identifies the kind of job. Must match the journal, if it exists.
+   * @throws IOException if the journal exists but belongs to a different job
+   */
+  public static ProgressJournal open(Path path, int chunkSize, int jobType) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      return new ProgressJournal(channel, chunkSize, jobType);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private final FileChannel channel;
+  private ByteBuffer buffer;
+  private final CRC32 crc = new CRC32();
+  private final State state;
+
+  private ProgressJournal(FileChannel channel, int chunkSize, int jobType) throws IOException {
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocate(BUFFER_RECORDS * RECORD_SIZE);
+
+    if (channel.size() < HEADER_SIZE) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).putInt(VERSION).putInt(chunkSize).putInt(jobType).flip();
+      channel.truncate(0L);
+      while (header.hasRemaining())
+        channel.write(header, HEADER_SIZE - header.remaining());
+      channel.force(true);
+      channel.position(HEADER_SIZE);
+      this.state = new State(new BitSet(), 0L, 0L, 0L, 0L, 0L);
+    } else {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining())
+        if (channel.read(header, header.position()) == -1)
+          throw new IOException("truncated journal header");
+      header.flip();
+      if (header.getInt() != MAGIC)
+        throw new IOException("not a progress journal");
+      if (header.getInt() != VERSION)
+        throw new IOException("unsupported progress journal version");
+      if (header.getInt() != chunkSize)
+        throw new IOException("progress journal has different chunk size");
+      if (header.getInt() != jobType)
+        throw new IOException("progress journal is for a different job");
+      this.state = replay();
+    }
+  }
+
+  /**
+   * @return the state as of when the journal was opened
+   */
+  public State getState() {
+    return state;
+  }
+
+  public void completed(long chunk, int entries, long inputStart, long inputEnd, long lineEnd,
+      long outputStart, long outputEnd) throws IOException {
+    append(COMPLETED, chunk, entries, inputStart, inputEnd, lineEnd, outputStart, outputEnd);
+  }
+
+  /**
+   * Records that a chunk failed with an error that might not happen again, so it should be retried
+   * next time.
+   */
+  public void failed(long chunk, int entries, long inputStart, long inputEnd, long lineEnd)
+      throws IOException {
+    append(FAILED, chunk, entries, inputStart, inputEnd, lineEnd, -1L, -1L);
+  }
+
+  /**
+   * Writes all buffered records to disk and waits for them to be durable. Callers must make sure
+   * any output the records point to is durable first.
+   */
+  public void sync() throws IOException {
+    flushBuffer();
+    channel.force(false);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      sync();
+    } finally {
+      channel.close();
+    }
+  }
+
+  private void append(byte type, long chunk, int entries, long inputStart, long inputEnd,
+      long lineEnd, long outputStart, long outputEnd) throws IOException {
+    if (buffer.remaining() < RECORD_SIZE) {
+      // Never write here, only in sync, after the output the records point to is durable
+      ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+      buffer.flip();
+      grown.put(buffer);
+      buffer = grown;
+    }
+    int start = buffer.position();
+    buffer.put(type).putLong(chunk).putInt(entries).putLong(inputStart).putLong(inputEnd)
+        .putLong(lineEnd).putLong(outputStart).putLong(outputEnd);
+    crc.reset();
+    crc.update(buffer.array(), start, RECORD_SIZE - 4);
+    buffer.putInt((int) crc.getValue());
+  }
+
+  private void flushBuffer() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining())
+      channel.write(buffer);
+    buffer.clear();
+  }
+
+  /**
+   * Reads every intact record, then truncates anything after the last one so that new records are
+   * appended to a clean log.
+   */
+  private State replay() throws IOException {
+    BitSet completed = new BitSet();
+    long completedEntries = 0L;
+    long outputEnd = 0L;
+
+    // Where each completed chunk ends in the input, so we can find the end of the completed prefix
+    long[] inputEnds = new long[1024];
+    long[] lineEnds = new long[1024];
+
+    ByteBuffer in = ByteBuffer.allocate(BUFFER_RECORDS * RECORD_SIZE * 8);
+    long valid = HEADER_SIZE;
+    boolean torn = false;
+    while (!torn) {
+      in.clear();
+      while (in.hasRemaining() && channel.read(in, valid + in.position()) != -1) {
+        // Keep reading until the buffer is full or we hit end of file
+      }
+      in.flip();
+      if (in.remaining() < RECORD_SIZE)
+        break;
+
+      while (in.remaining() >= RECORD_SIZE) {
+        crc.reset();
+        crc.update(in.array(), in.position(), RECORD_SIZE - 4);
+        byte type = in.get();
+        long chunk = in.getLong();
+        int entries = in.getInt();
+        in.getLong(); // inputStart
+        long inputEnd = in.getLong();
+        long lineEnd = in.getLong();
+        in.getLong(); // outputStart
+        long chunkOutputEnd = in.getLong();
+        int checksum = in.getInt();
+        if (checksum != (int) crc.getValue() || (type != COMPLETED && type != FAILED)
+            || chunk < 0L || chunk >= Integer.MAX_VALUE) {
+          torn = true;
+          break;
+        }
+        valid = valid + RECORD_SIZE;
+
+        int index = (int) chunk;
+        if (type == COMPLETED && !completed.get(index)) {
+          completed.set(index);
+          completedEntries = completedEntries + entries;
+          outputEnd = Math.max(outputEnd, chunkOutputEnd);
+          if (index >= inputEnds.length) {
+            int length = (int) Math.min(Math.max(2L * inputEnds.length, index + 1L),
+                Integer.MAX_VALUE);
+            inputEnds = Arrays.copyOf(inputEnds, length);
+            lineEnds = Arrays.copyOf(lineEnds, length);
+          }
+          inputEnds[index] = inputEnd;
+          lineEnds[index] = lineEnd;
+        }
+      }
+    }
+
+    channel.truncate(valid);
+    channel.position(valid);
+
+    int prefixChunks = completed.nextClearBit(0);
+    long prefixInputEnd = prefixChunks == 0 ? 0L : inputEnds[prefixChunks - 1];
+    long prefixLineEnd = prefixChunks == 0 ? 0L : lineEnds[prefixChunks - 1];
+
+    return new State(completed, completedEntries, prefixChunks, prefixInputEnd, prefixLineEnd,
+        outputEnd);
+  }
+}
@@ -0,0 +1,439 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.bulk;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A persistent, approximate set of URLs, for skipping links that earlier runs already processed.
+ * It never forgets a URL it has seen, but it may claim to have seen a URL it has not, with
+ * probability at most the configured false positive rate.
+ *
+ * <p>
+ * This is a scalable Bloom filter. It starts with one layer sized for {@code initialCapacity} URLs.
+ * Whenever the newest layer is full, it adds a layer with twice the capacity and half the false
+ * positive rate of the previous one, so the overall false positive rate stays under the
+ * configured rate no matter how many URLs are added. The first layer runs at half the configured
+ * rate, so at a 1% false positive rate it uses about 1.38 bytes per URL, and each later layer uses
+ * about 0.18 bytes per URL more than the one before.
+ *
+ * <p>
+ * Each layer must fit in one mapping of at most 1 GiB. Once doubling would make a layer larger
+ * than that, new layers get as much capacity as fits in 1 GiB at their false positive rate,
+ * which shrinks slowly as the rate halves. The overall rate still holds, but such a filter needs
+ * more layers, and so more time per lookup, than one whose layers keep doubling. At the default
+ * parameters, this starts after about half a billion URLs.
+ *
+ * <p>
+ * The layers live in a memory-mapped file, not on the heap. Changes reach the file as the
+ * operating system writes back dirty pages, so they survive a crash of the process, and
+ * {@link #sync()} makes them durable.
+ */
+public class SeenUrlFilter implements Closeable {
+  public static final long DEFAULT_INITIAL_CAPACITY = 1L << 20;
+
+  public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+  private static final int MAGIC = 0x41525346;
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 64;
+
+  private static final int HEADER_LAYERS_OFFSET = 24;
+
+  private static final int LAYER_HEADER_SIZE = 32;
+
+  private static final int LAYER_COUNT_OFFSET = 24;
+
+  /**
+   * Each layer must fit in one mapping. Once layers reach this size, they stop growing.
+   */
+  /* default */ static final long MAX_LAYER_BITS = 1L << 33;
+
+  private static final double LN2 = Math.log(2.0);
+
+  /**
+   * Opens the filter at the given path with the default parameters, creating it if necessary.
+   */
+  public static SeenUrlFilter open(Path path) throws IOException {
+    return open(path, DEFAULT_INITIAL_CAPACITY, DEFAULT_FALSE_POSITIVE_RATE);
+  }
+
+  /**
+   * Opens the filter at the given path, creating it if necessary. The parameters only apply to a
+   * new filter. An existing filter keeps the parameters it was created with.
+   *
+   * @param initialCapacity the number of URLs the first layer holds. Sizing this near the number
+   *        of URLs in one run keeps the filter to one or two layers.
+   * @param falsePositiveRate the maximum probability that {@link #mightContain(String)} returns
+   *        true for a URL that was never added
+   * @throws IOException if the file exists but is not a seen URL filter
+   */
+  public static SeenUrlFilter open(Path path, long initialCapacity, double falsePositiveRate)
+      throws IOException {
+    if (initialCapacity < 1L)
+      throw new IllegalArgumentException("initialCapacity must be positive");
+    if (!(falsePositiveRate > 0.0 && falsePositiveRate < 1.0))
+      throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      return new SeenUrlFilter(channel, initialCapacity, falsePositiveRate);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private static final class Layer {
+    public final MappedByteBuffer buffer;
+    public final long capacity;
+    public final long bits;
+    public final int hashes;
+    public long count;
+
+    public Layer(MappedByteBuffer buffer) {
+      this.buffer = buffer;
+      this.capacity = buffer.getLong(0);
+      this.bits = buffer.getLong(8);
+      this.hashes = buffer.getInt(16);
+      this.count = buffer.getLong(LAYER_COUNT_OFFSET);
+    }
+
+    public boolean get(long h1, long h2) {
+      for (int i = 0; i < hashes; i++) {
+        long bit = index(h1, h2, i);
+        long word = buffer.getLong(LAYER_HEADER_SIZE + (int) (bit >>> 6) * 8);
+        if ((word & (1L << bit)) == 0L)
+          return false;
+      }
+      return true;
+    }
+
+    public void set(long h1, long h2) {
+      for (int i = 0; i < hashes; i++) {
+        long bit = index(h1, h2, i);
+        int offset = LAYER_HEADER_SIZE + (int) (bit >>> 6) * 8;
+        buffer.putLong(offset, buffer.getLong(offset) | (1L << bit));
+      }
+      count = count + 1;
+      buffer.putLong(LAYER_COUNT_OFFSET, count);
+    }
+
+    /**
+     * Kirsch and Mitzenmacher's double hashing, which is as good as independent hash functions
+     */
+    private long index(long h1, long h2, int i) {
+      return ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+    }
+  }
+
+  private final FileChannel channel;
+  private final MappedByteBuffer header;
+  private final long initialCapacity;
+  private final double falsePositiveRate;
+  private final List<Layer> layers;
+
+  private SeenUrlFilter(FileChannel channel, long initialCapacity, double falsePositiveRate)
+      throws IOException {
+    this.channel = channel;
+    this.layers = new ArrayList<>();
+
+    if (channel.size() == 0L) {
+      this.header = channel.map(MapMode.READ_WRITE, 0L, HEADER_SIZE);
+      header.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, initialCapacity)
+          .putDouble(16, falsePositiveRate).putInt(HEADER_LAYERS_OFFSET, 0);
+      this.initialCapacity = initialCapacity;
+      this.falsePositiveRate = falsePositiveRate;
+      addLayer();
+    } else {
+      // Mapping a short file would grow it, so check its size first
+      if (channel.size() < HEADER_SIZE)
+        throw new IOException("not a seen URL filter");
+      this.header = channel.map(MapMode.READ_WRITE, 0L, HEADER_SIZE);
+      if (header.getInt(0) != MAGIC)
+        throw new IOException("not a seen URL filter");
+      if (header.getInt(4) != VERSION)
+        throw new IOException("unsupported seen URL filter version");
+      this.initialCapacity = header.getLong(8);
+      this.falsePositiveRate = header.getDouble(16);
+
+      int layerCount = header.getInt(HEADER_LAYERS_OFFSET);
+      long position = HEADER_SIZE;
+      ByteBuffer layerHeader = ByteBuffer.allocate(LAYER_HEADER_SIZE);
+      for (int i = 0; i < layerCount; i++) {
+        layerHeader.clear();
+        while (layerHeader.hasRemaining())
+          if (channel.read(layerHeader, position + layerHeader.position()) == -1)
+            throw new IOException("truncated seen URL filter");
+        long size = LAYER_HEADER_SIZE + layerHeader.getLong(8) / 8;
+        if (position + size > channel.size())
+          throw new IOException("truncated seen URL filter");
+        layers.add(new Layer(channel.map(MapMode.READ_WRITE, position, size)));
+        position = position + size;
+      }
+      if (layers.isEmpty())
+        addLayer();
+    }
+  }
+
+  /**
+   * @return true if the given URL was probably added before, or false if it definitely was not
+   */
+  public synchronized boolean mightContain(String url) {
+    long[] hash = hash(url);
+    return contains(hash[0], hash[1]);
+  }
+
+  /**
+   * Adds the given URL.
+   * 
+   * @return true if the URL was definitely not added before, or false if it probably was
+   * @throws IOException if a new layer was needed but could not be allocated
+   */
+  public synchronized boolean add(String url) throws IOException {
+    long[] hash = hash(url);
+    if (contains(hash[0], hash[1]))
+      return false;
+
+    Layer layer = layers.get(layers.size() - 1);
+    if (layer.count >= layer.capacity)
+      layer = addLayer();
+    layer.set(hash[0], hash[1]);
+
+    return true;
+  }
+
+  /**
+   * @return the number of distinct URLs added, less the ones that collided with earlier URLs
+   */
+  public synchronized long getCount() {
+    long result = 0L;
+    for (Layer layer : layers)
+      result = result + layer.count;
+    return result;
+  }
+
+  /**
+   * @return the number of layers
+   */
+  public synchronized int getLayerCount() {
+    return layers.size();
+  }
+
+  /**
+   * @return the initialCapacity
+   */
+  public long getInitialCapacity() {
+    return initialCapacity;
+  }
+
+  /**
+   * @return the falsePositiveRate
+   */
+  public double getFalsePositiveRate() {
+    return falsePositiveRate;
+  }
+
+  /**
+   * Waits until all changes so far are durable.
+   */
+  public synchronized void sync() {
+    for (Layer layer : layers)
+      layer.buffer.force();
+    header.force();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      sync();
+    } finally {
+      channel.close();
+    }
+  }
+
+  private boolean contains(long h1, long h2) {
+    // Newer layers are larger and hold most of the URLs, so check them first
+    for (int i = layers.size() - 1; i >= 0; i--)
+      if (layers.get(i).get(h1, h2))
+        return true;
+    return false;
+  }
+
+  private Layer addLayer() throws IOException {
+    int index = layers.size();
+    double layerFalsePositiveRate = layerFalsePositiveRate(index);
+    long capacity =
+        layerCapacity(initialCapacity, index, layerFalsePositiveRate, MAX_LAYER_BITS);
+    if (capacity < 1L)
+      throw new IOException("seen URL filter is full");
+    long bits = bitsFor(capacity, layerFalsePositiveRate);
+    int hashes = (int) Math.max(1L, Math.round((double) bits / capacity * LN2));
+
+    long position = HEADER_SIZE;
+    for (Layer layer : layers)
+      position = position + LAYER_HEADER_SIZE + layer.bits / 8;
+
+    // Discard anything left over from a layer that was never committed. Mapping past the end of
+    // the file extends it with zeros.
+    channel.truncate(position);
+    MappedByteBuffer buffer =
+        channel.map(MapMode.READ_WRITE, position, LAYER_HEADER_SIZE + bits / 8);
+    buffer.putLong(0, capacity).putLong(8, bits).putInt(16, hashes).putLong(LAYER_COUNT_OFFSET,
+        0L);
+    buffer.force();
+
+    // The layer only exists once the header says so
+    header.putInt(HEADER_LAYERS_OFFSET, index + 1);
+    header.force();
+
+    Layer result = new Layer(buffer);
+    layers.add(result);
+    return result;
+  }
+
+  /**
+   * Layer capacities double, until a layer would need more than the given number of bits. After
+   * that, each layer gets the largest capacity that fits, so no layer exceeds its false positive
+   * rate.
+   */
+  /* default */ static long layerCapacity(long initialCapacity, int index,
+      double layerFalsePositiveRate, long maxBits) {
+    long capacity;
+    if (index >= Long.numberOfLeadingZeros(initialCapacity) - 1)
+      capacity = Long.MAX_VALUE;
+    else
+      capacity = initialCapacity << index;
+
+    // Leave room for bitsFor to round up to a whole word
+    double bitsPerUrl = -Math.log(layerFalsePositiveRate) / (LN2 * LN2);
+    long maxCapacity = (long) Math.floor((maxBits - 64L) / bitsPerUrl);
+
+    return Math.min(capacity, maxCapacity);
+  }
+
+  /**
+   * Layer false positive rates halve, so that they sum to at most the overall rate
+   */
+  private double layerFalsePositiveRate(int index) {
+    return falsePositiveRate / 2.0 / Math.pow(2.0, index);
+  }
+
+  /**
+   * The optimal number of bits for the given capacity and false positive rate, rounded up to a
+   * whole number of words
+   */
+  /* default */ static long bitsFor(long capacity, double falsePositiveRate) {
+    double bits = -capacity * Math.log(falsePositiveRate) / (LN2 * LN2);
+    return Math.max(64L, ((long) Math.ceil(bits) + 63L) / 64L * 64L);
+  }
+
+  /**
+   * @return the 128-bit MurmurHash3 (x64 variant) of the UTF-8 bytes of the given string
+   */
+  /* default */ static long[] hash(String s) {
+    byte[] data = s.getBytes(UTF_8);
+    final long c1 = 0x87c37b91114253d5L;
+    final long c2 = 0x4cf5ad432745937fL;
+    long h1 = 0L;
+    long h2 = 0L;
+
+    int blocks = data.length / 16;
+    for (int i = 0; i < blocks; i++) {
+      long k1 = getLittleEndianLong(data, i * 16);
+      long k2 = getLittleEndianLong(data, i * 16 + 8);
+
+      k1 = k1 * c1;
+      k1 = Long.rotateLeft(k1, 31);
+      k1 = k1 * c2;
+      h1 = h1 ^ k1;
+      h1 = Long.rotateLeft(h1, 27);
+      h1 = h1 + h2;
+      h1 = h1 * 5 + 0x52dce729;
+
+      k2 = k2 * c2;
+      k2 = Long.rotateLeft(k2, 33);
+      k2 = k2 * c1;
+      h2 = h2 ^ k2;
+      h2 = Long.rotateLeft(h2, 31);
+      h2 = h2 + h1;
+      h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    long k1 = 0L;
+    long k2 = 0L;
+    int tail = blocks * 16;
+    for (int i = data.length - tail - 1; i >= 8; i--)
+      k2 = k2 ^ ((data[tail + i] & 0xFFL) << ((i - 8) * 8));
+    if (data.length - tail > 8) {
+      k2 = k2 * c2;
+      k2 = Long.rotateLeft(k2, 33);
+      k2 = k2 * c1;
+      h2 = h2 ^ k2;
+    }
+    for (int i = Math.min(data.length - tail, 8) - 1; i >= 0; i--)
+      k1 = k1 ^ ((data[tail + i] & 0xFFL) << (i * 8));
+    if (data.length - tail > 0) {
+      k1 = k1 * c1;
+      k1 = Long.rotateLeft(k1, 31);
+      k1 = k1 * c2;
+      h1 = h1 ^ k1;
+    }
+
+    h1 = h1 ^ data.length;
+    h2 = h2 ^ data.length;
+    h1 = h1 + h2;
+    h2 = h2 + h1;
+    h1 = fmix64(h1);
+    h2 = fmix64(h2);
+    h1 = h1 + h2;
+    h2 = h2 + h1;
+
+    return new long[] {h1, h2};
+  }
+
+  private static long fmix64(long k) {
+    k = k ^ (k >>> 33);
+    k = k * 0xff51afd7ed558ccdL;
+    k = k ^ (k >>> 33);
+    k = k * 0xc4ceb9fe1a85ec53L;
+    k = k ^ (k >>> 33);
+    return k;
+  }
+
+  private static long getLittleEndianLong(byte[] data, int offset) {
+    long result = 0L;
+    for (int i = 7; i >= 0; i--)
+      result = (result << 8) | (data[offset + i] & 0xFFL);
+    return result;
+  }
+}
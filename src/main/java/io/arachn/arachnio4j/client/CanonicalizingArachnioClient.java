@@ -0,0 +1,408 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.client;
+
+import static java.util.Objects.requireNonNull;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.arachn.arachnio4j.ArachnioClient;
+import io.arachn.arachnio4j.util.Jackson;
+import io.arachn.arachnio4j.util.UrlCanonicalizer;
+import io.arachn.spi.model.DomainName;
+import io.arachn.spi.model.DomainNameBatch;
+import io.arachn.spi.model.ExtractedLink;
+import io.arachn.spi.model.Link;
+import io.arachn.spi.model.LinkBatch;
+import io.arachn.spi.model.LinkBatchEntry;
+import io.arachn.spi.model.ParsedDomainName;
+import io.arachn.spi.model.ParsedDomainNameBatch;
+import io.arachn.spi.model.ParsedLink;
+import io.arachn.spi.model.ParsedLinkBatch;
+import io.arachn.spi.model.UnwoundLink;
+import io.arachn.spi.model.UnwoundLinkBatch;
+
+/**
+ * Canonicalizes links with a {@link UrlCanonicalizer} before unwinding or extracting them, so that
+ * variants of the same link that differ only in tracking parameters, host case, default port, and
+ * so on cost one API call instead of many.
+ * 
+ * <p>
+ * Single-link results are cached by canonical URL in a bounded LRU cache, and concurrent calls
+ * for the same canonical URL share one request. Batch unwinds send each canonical URL at most once
+ * per batch, skip cached URLs entirely, and return one response entry per caller entry under the
+ * caller's original id. Only successful results are cached.
+ *
+ * <p>
+ * Unwind results are small, so by default up to {@link #DEFAULT_CACHE_SIZE} of them are cached.
+ * Extract results carry the whole text of the page, and every cache hit copies one, so caching
+ * them by count could hold gigabytes of heap. Extract results are therefore not cached by default,
+ * and callers that expect repeated extracts should size that cache to the memory they can spare.
+ * Concurrent extracts of the same canonical URL still share one request either way.
+ *
+ * <p>
+ * Every caller gets its own copy of the result, with the URL the caller passed as the original
+ * link, so callers can key results by their input. The other parts of the parsed original link
+ * describe the canonical URL that was actually sent.
+ * 
+ * <p>
+ * Parsing is not canonicalized, since the caller presumably wants the parts of the URL it gave.
+ */
+public class CanonicalizingArachnioClient implements ArachnioClient {
+  public static final int DEFAULT_CACHE_SIZE = 10000;
+
+  public static final int DEFAULT_EXTRACT_CACHE_SIZE = 0;
+
+  private static final String UNWIND = "unwind ";
+
+  private static final String EXTRACT = "extract ";
+
+  private static final String UNWIND_BATCH = "unwindBatch ";
+
+  /**
+   * Where the parsed original link lives in each type of result
+   */
+  private static final JsonPointer UNWIND_ORIGINAL = JsonPointer.compile("/original");
+
+  private static final JsonPointer EXTRACT_ORIGINAL = JsonPointer.compile("/link/original");
+
+  private final ArachnioClient delegate;
+  private final UrlCanonicalizer canonicalizer;
+  private final ResultCache cache;
+  private final ResultCache extractCache;
+  private final ConcurrentMap<String, CompletableFuture<JsonNode>> inFlight;
+  private final AtomicLong links;
+  private final AtomicLong deduplicatedLinks;
+
+  public CanonicalizingArachnioClient(ArachnioClient delegate) {
+    this(delegate, UrlCanonicalizer.DEFAULT);
+  }
+
+  public CanonicalizingArachnioClient(ArachnioClient delegate, UrlCanonicalizer canonicalizer) {
+    this(delegate, canonicalizer, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * @param cacheSize The maximum number of unwind results to cache. Zero disables the cache, but
+   *        concurrent calls and duplicates within a batch are still deduplicated.
+   */
+  public CanonicalizingArachnioClient(ArachnioClient delegate, UrlCanonicalizer canonicalizer,
+      int cacheSize) {
+    this(delegate, canonicalizer, cacheSize, DEFAULT_EXTRACT_CACHE_SIZE);
+  }
+
+  /**
+   * @param extractCacheSize The maximum number of extract results to cache. Each one holds the
+   *        whole text of its page.
+   */
+  public CanonicalizingArachnioClient(ArachnioClient delegate, UrlCanonicalizer canonicalizer,
+      int cacheSize, int extractCacheSize) {
+    if (cacheSize < 0)
+      throw new IllegalArgumentException("cacheSize must not be negative");
+    if (extractCacheSize < 0)
+      throw new IllegalArgumentException("extractCacheSize must not be negative");
+    this.delegate = requireNonNull(delegate);
+    this.canonicalizer = requireNonNull(canonicalizer);
+    this.cache = new ResultCache(cacheSize);
+    this.extractCache = new ResultCache(extractCacheSize);
+    this.inFlight = new ConcurrentHashMap<>();
+    this.links = new AtomicLong();
+    this.deduplicatedLinks = new AtomicLong();
+  }
+
+  @Override
+  public void warmUp() {
+    getDelegate().warmUp();
+  }
+
+  @Override
+  public ParsedDomainName parseDomainName(DomainName domainName) {
+    return getDelegate().parseDomainName(domainName);
+  }
+
+  @Override
+  public ParsedDomainNameBatch parseDomainNameBatch(DomainNameBatch domainNameBatch) {
+    return getDelegate().parseDomainNameBatch(domainNameBatch);
+  }
+
+  @Override
+  public ExtractedLink extractLink(Link link) {
+    return call(EXTRACT, extractCache, link.getUrl(), ExtractedLink.class, EXTRACT_ORIGINAL,
+        url -> getDelegate().extractLink(new Link().url(url)));
+  }
+
+  @Override
+  public ParsedLink parseLink(Link link) {
+    return getDelegate().parseLink(link);
+  }
+
+  @Override
+  public ParsedLinkBatch parseLinkBatch(LinkBatch linkBatch) {
+    return getDelegate().parseLinkBatch(linkBatch);
+  }
+
+  @Override
+  public UnwoundLink unwindLink(Link link) {
+    return call(UNWIND, cache, link.getUrl(), UnwoundLink.class, UNWIND_ORIGINAL,
+        url -> getDelegate().unwindLink(new Link().url(url)));
+  }
+
+  @Override
+  public UnwoundLinkBatch unwindLinkBatch(LinkBatch linkBatch) {
+    List<LinkBatchEntry> entries = linkBatch.getEntries();
+
+    // The cache key of each caller entry, and the results we have so far by cache key
+    List<String> keys = new ArrayList<>(entries.size());
+    Map<String, JsonNode> results = new HashMap<>();
+
+    // The entries we actually send, by cache key. Their ids are their positions in the request.
+    Map<String, LinkBatchEntry> misses = new LinkedHashMap<>();
+    for (int i = 0; i < entries.size(); i++) {
+      LinkBatchEntry entry = entries.get(i);
+      links.incrementAndGet();
+
+      // Let the server judge entries without a URL. Don't share or cache them.
+      if (entry.getUrl() == null) {
+        String key = "\0" + i;
+        keys.add(key);
+        misses.put(key, new LinkBatchEntry().id(Integer.toString(misses.size())));
+        continue;
+      }
+
+      String url = getCanonicalizer().canonicalize(entry.getUrl());
+      String key = UNWIND_BATCH + url;
+      keys.add(key);
+
+      if (results.containsKey(key) || misses.containsKey(key)) {
+        deduplicatedLinks.incrementAndGet();
+        continue;
+      }
+
+      JsonNode cached = cache.get(key);
+      if (cached != null) {
+        deduplicatedLinks.incrementAndGet();
+        results.put(key, cached);
+        continue;
+      }
+
+      misses.put(key, new LinkBatchEntry().id(Integer.toString(misses.size())).url(url));
+    }
+
+    ObjectNode root;
+    if (misses.isEmpty()) {
+      root = Jackson.MAPPER.createObjectNode();
+    } else {
+      UnwoundLinkBatch response =
+          getDelegate().unwindLinkBatch(new LinkBatch().entries(new ArrayList<>(misses.values())));
+
+      // Entries are cached, copied, and given back their caller's id and URL as trees, like
+      // single results
+      root = Jackson.MAPPER.valueToTree(response);
+      List<String> missKeys = new ArrayList<>(misses.keySet());
+      for (Iterator<JsonNode> i = root.path("entries").elements(); i.hasNext();) {
+        JsonNode responseEntry = i.next();
+        int index;
+        try {
+          index = Integer.parseInt(responseEntry.path("id").asText());
+        } catch (NumberFormatException e) {
+          continue;
+        }
+        if (index < 0 || index >= missKeys.size())
+          continue;
+        String key = missKeys.get(index);
+        results.put(key, responseEntry);
+        if (key.startsWith(UNWIND_BATCH) && isSuccess(responseEntry))
+          cache.put(key, responseEntry.deepCopy());
+      }
+    }
+
+    ArrayNode responseEntries = root.putArray("entries");
+    for (int i = 0; i < entries.size(); i++) {
+      JsonNode result = results.get(keys.get(i));
+      if (result == null || !result.isObject())
+        continue;
+      ObjectNode responseEntry = result.deepCopy();
+      responseEntry.put("id", entries.get(i).getId());
+      if (entries.get(i).getUrl() != null)
+        restoreUrl(responseEntry.path("result"), UNWIND_ORIGINAL, entries.get(i).getUrl());
+      responseEntries.add(responseEntry);
+    }
+
+    try {
+      return Jackson.MAPPER.treeToValue(root, UnwoundLinkBatch.class);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to deserialize value", e);
+    }
+  }
+
+  private <T> T call(String operation, ResultCache cache, String url, Class<T> responseType,
+      JsonPointer original, Function<String, T> remote) {
+    links.incrementAndGet();
+
+    // Let the server judge a missing URL
+    if (url == null)
+      return remote.apply(null);
+
+    String canonicalUrl = getCanonicalizer().canonicalize(url);
+    String key = operation + canonicalUrl;
+
+    // We keep results as trees, which we never hand out, so no caller can change another's result
+    JsonNode cached = cache.get(key);
+    if (cached != null) {
+      deduplicatedLinks.incrementAndGet();
+      return copyOf(cached, responseType, original, url);
+    }
+
+    CompletableFuture<JsonNode> mine = new CompletableFuture<>();
+    CompletableFuture<JsonNode> theirs = inFlight.putIfAbsent(key, mine);
+    if (theirs != null) {
+      deduplicatedLinks.incrementAndGet();
+      return copyOf(await(theirs), responseType, original, url);
+    }
+
+    try {
+      T result = remote.apply(canonicalUrl);
+      JsonNode tree = Jackson.MAPPER.valueToTree(result);
+      cache.put(key, tree);
+      mine.complete(tree);
+      return copyOf(tree, responseType, original, url);
+    } catch (RuntimeException e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, mine);
+    }
+  }
+
+  private static <T> T copyOf(JsonNode tree, Class<T> responseType, JsonPointer original,
+      String url) {
+    JsonNode copy = tree.deepCopy();
+    restoreUrl(copy, original, url);
+    try {
+      return Jackson.MAPPER.treeToValue(copy, responseType);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to deserialize value", e);
+    }
+  }
+
+  /**
+   * Replaces the canonical URL in the given result with the one the caller passed
+   */
+  private static void restoreUrl(JsonNode result, JsonPointer original, String url) {
+    JsonNode parsedLink = result.at(original);
+    if (parsedLink.isObject())
+      ((ObjectNode) parsedLink).put("link", url);
+  }
+
+  /**
+   * Batch entries that failed have no result, or have an error
+   */
+  private static boolean isSuccess(JsonNode responseEntry) {
+    return responseEntry.path("result").isObject()
+        && (responseEntry.path("error").isMissingNode() || responseEntry.path("error").isNull());
+  }
+
+  private static JsonNode await(CompletableFuture<JsonNode> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UncheckedIOException("interrupted", new InterruptedIOException());
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * @return the number of links callers have asked to unwind or extract
+   */
+  public long getLinks() {
+    return links.get();
+  }
+
+  /**
+   * @return the number of links answered from the cache, by a concurrent call, or by another entry
+   *         in the same batch instead of by their own request
+   */
+  public long getDeduplicatedLinks() {
+    return deduplicatedLinks.get();
+  }
+
+  /**
+   * @return the delegate
+   */
+  public ArachnioClient getDelegate() {
+    return delegate;
+  }
+
+  /**
+   * @return the canonicalizer
+   */
+  public UrlCanonicalizer getCanonicalizer() {
+    return canonicalizer;
+  }
+
+  /**
+   * A synchronized LRU map of results. A maximum size of zero stores nothing.
+   */
+  private static final class ResultCache {
+    private final int maxSize;
+    private final LinkedHashMap<String, JsonNode> entries;
+
+    public ResultCache(int maxSize) {
+      this.maxSize = maxSize;
+      this.entries = new LinkedHashMap<String, JsonNode>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JsonNode> eldest) {
+          return size() > ResultCache.this.maxSize;
+        }
+      };
+    }
+
+    public synchronized JsonNode get(String key) {
+      return entries.get(key);
+    }
+
+    public synchronized void put(String key, JsonNode value) {
+      if (maxSize > 0)
+        entries.put(key, value);
+    }
+  }
+}
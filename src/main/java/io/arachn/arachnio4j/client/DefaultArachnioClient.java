@@ -27,15 +27,19 @@ import java.io.UncheckedIOException;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpRequest.BodyPublishers;
-import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandlers;
-import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import io.arachn.arachnio4j.ArachnioClient;
 import io.arachn.arachnio4j.exception.ForbiddenArachnioException;
 import io.arachn.arachnio4j.exception.InternalErrorArachnioException;
+import io.arachn.arachnio4j.exception.UnrecognizedStatusArachnioException;
+import io.arachn.arachnio4j.transport.ArachnioTransport;
+import io.arachn.arachnio4j.transport.JdkHttpClientTransport;
+import io.arachn.arachnio4j.transport.TransportRequest;
+import io.arachn.arachnio4j.transport.TransportResponse;
+import io.arachn.arachnio4j.util.Codec;
 import io.arachn.arachnio4j.util.Jackson;
+import io.arachn.arachnio4j.util.JacksonCodec;
 import io.arachn.spi.model.DomainName;
 import io.arachn.spi.model.DomainNameBatch;
 import io.arachn.spi.model.ExtractedLink;
@@ -65,264 +69,240 @@ public class DefaultArachnioClient implements ArachnioClient {
    */
   /* default */ static final String BLOBR_API_KEY_HEADER_NAME = "X-BLOBR-KEY";
 
-  private static final String CONTENT_TYPE_HEADER_NAME = "Content-Type";
+  /* default */ static final String CONTENT_TYPE_HEADER_NAME = "Content-Type";
+
+  /* default */ static final String ACCEPT_HEADER_NAME = "Accept";
 
   public static HttpClient defaultClient() {
     return HttpClient.newHttpClient();
   }
 
-  private final HttpClient client;
+  private final ArachnioTransport transport;
   private final String baseUrl;
   private final String key;
+  private final Codec codec;
+  private final RequestScheduler scheduler;
+  private final RequestPriority priority;
 
   public DefaultArachnioClient(String baseUrl, String key) {
     this(defaultClient(), baseUrl, key);
   }
 
+  public DefaultArachnioClient(String baseUrl, String key, Codec codec) {
+    this(defaultClient(), baseUrl, key, codec);
+  }
+
   public DefaultArachnioClient(HttpClient client, String baseUrl, String key) {
+    this(client, baseUrl, key, JacksonCodec.JSON);
+  }
+
+  /**
+   * @param codec The wire format for request bodies. Responses are decoded according to their
+   *        {@code Content-Type}, so a server that answers a binary request with JSON still works.
+   */
+  public DefaultArachnioClient(HttpClient client, String baseUrl, String key, Codec codec) {
+    this(client, baseUrl, key, codec, RequestScheduler.unbounded());
+  }
+
+  /**
+   * @param scheduler Decides which request goes next when more requests are waiting than the
+   *        scheduler allows to run at once. Batch requests go in the {@link RequestPriority#BULK
+   *        bulk} lane and all others in the {@link RequestPriority#INTERACTIVE interactive} lane,
+   *        unless overridden with {@link #withPriority(RequestPriority)}.
+   */
+  public DefaultArachnioClient(HttpClient client, String baseUrl, String key, Codec codec,
+      RequestScheduler scheduler) {
+    this(new JdkHttpClientTransport(client), baseUrl, key, codec, scheduler);
+  }
+
+  /**
+   * @param transport The HTTP implementation to send requests with, e.g., an
+   *        {@link io.arachn.arachnio4j.transport.ApacheHttpClient5Transport}. The default is a
+   *        {@link JdkHttpClientTransport}. This client does not close the transport.
+   */
+  public DefaultArachnioClient(ArachnioTransport transport, String baseUrl, String key,
+      Codec codec, RequestScheduler scheduler) {
     if (baseUrl == null)
       throw new NullPointerException();
     if (baseUrl.endsWith("/"))
       baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
-    this.client = requireNonNull(client);
+    this.transport = requireNonNull(transport);
     this.baseUrl = baseUrl;
     this.key = requireNonNull(key);
+    this.codec = requireNonNull(codec);
+    this.scheduler = requireNonNull(scheduler);
+    this.priority = null;
+  }
+
+  private DefaultArachnioClient(DefaultArachnioClient that, RequestPriority priority) {
+    this.transport = that.transport;
+    this.baseUrl = that.baseUrl;
+    this.key = that.key;
+    this.codec = that.codec;
+    this.scheduler = that.scheduler;
+    this.priority = requireNonNull(priority);
+  }
+
+  /**
+   * Returns a view of this client that sends all requests in the given lane, sharing this client's
+   * connections and scheduler. For example, a bulk job that calls {@link #extractLink(Link)} for
+   * each of many links should use {@code client.withPriority(RequestPriority.BULK)} so that it
+   * does not compete with interactive callers.
+   */
+  public DefaultArachnioClient withPriority(RequestPriority priority) {
+    return new DefaultArachnioClient(this, priority);
+  }
+
+  /**
+   * @return the transport
+   */
+  public ArachnioTransport getTransport() {
+    return transport;
   }
 
+  /**
+   * @return the scheduler, e.g., to monitor per-lane queue depth and wait time
+   */
+  public RequestScheduler getScheduler() {
+    return scheduler;
+  }
 
+
+  /**
+   * Builds the codec's serializers for all model types and opens one connection to the server.
+   * 
+   * @see #warmUp(int)
+   */
   @Override
-  public ParsedDomainName parseDomainName(DomainName domainName) {
-    HttpResponse<String> response;
+  public void warmUp() {
+    warmUp(1);
+  }
+
+  /**
+   * Builds the codec's serializers for all model types and opens up to the given number of
+   * connections to the server. Serverless and other short-lived processes should call this during
+   * initialization, before the first request arrives. Warming up sends {@code HEAD} requests,
+   * which are not API calls.
+   *
+   * @throws UncheckedIOException if the server could not be reached
+   */
+  public void warmUp(int connections) {
+    if (connections < 0)
+      throw new IllegalArgumentException("connections must not be negative");
+
+    getCodec().warmUp(Jackson.MODEL_TYPES);
+
+    // Responses may come back as JSON no matter what we asked for
+    if (!getCodec().getContentType().equals(JacksonCodec.JSON_CONTENT_TYPE))
+      JacksonCodec.JSON.warmUp(Jackson.MODEL_TYPES);
+
+    if (connections == 0)
+      return;
+
     try {
-      response =
-          getClient().send(
-              HttpRequest.newBuilder(URI.create(format("%s/domains/parse", getBaseUrl())))
-                  .header(BLOBR_API_KEY_HEADER_NAME, getKey())
-                  .header(CONTENT_TYPE_HEADER_NAME, "application/json")
-                  .POST(BodyPublishers.ofString(Jackson.serialize(domainName),
-                      StandardCharsets.UTF_8))
-                  .build(),
-              BodyHandlers.ofString(StandardCharsets.UTF_8));
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      throw new UncheckedIOException("interrupted", new InterruptedIOException());
+      getTransport().warmUp(URI.create(getBaseUrl() + "/"), connections);
+    } catch (InterruptedIOException e) {
+      throw new UncheckedIOException("interrupted", e);
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
+  }
 
-    if (response.statusCode() == HttpURLConnection.HTTP_FORBIDDEN)
-      throw new UncheckedIOException(new ForbiddenArachnioException());
-    if (response.statusCode() == HttpURLConnection.HTTP_BAD_REQUEST || response.statusCode() == 422)
-      throw new IllegalArgumentException("invalid domain name");
-    if (response.statusCode() == HttpURLConnection.HTTP_INTERNAL_ERROR)
-      throw new UncheckedIOException(new InternalErrorArachnioException());
-    if (response.statusCode() != HttpURLConnection.HTTP_OK)
-      throw new UncheckedIOException(
-          new IOException("unrecognized failure " + response.statusCode()));
-
-    return Jackson.deserialize(ParsedDomainName.class, response.body());
+  @Override
+  public ParsedDomainName parseDomainName(DomainName domainName) {
+    return post("/domains/parse", domainName, ParsedDomainName.class, "invalid domain name",
+        RequestPriority.INTERACTIVE);
   }
 
 
   @Override
   public ParsedDomainNameBatch parseDomainNameBatch(DomainNameBatch domainNameBatch) {
-    HttpResponse<String> response;
-    try {
-      response = getClient().send(
-          HttpRequest.newBuilder(URI.create(format("%s/domains/parse/batch", getBaseUrl())))
-              .header(BLOBR_API_KEY_HEADER_NAME, getKey())
-              .header(CONTENT_TYPE_HEADER_NAME, "application/json").POST(BodyPublishers
-                  .ofString(Jackson.serialize(domainNameBatch), StandardCharsets.UTF_8))
-              .build(),
-          BodyHandlers.ofString(StandardCharsets.UTF_8));
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      throw new UncheckedIOException("interrupted", new InterruptedIOException());
-    } catch (IOException e) {
-      throw new UncheckedIOException(e);
-    }
-
-    if (response.statusCode() == HttpURLConnection.HTTP_FORBIDDEN)
-      throw new UncheckedIOException(new ForbiddenArachnioException());
-    if (response.statusCode() == HttpURLConnection.HTTP_BAD_REQUEST || response.statusCode() == 422)
-      throw new IllegalArgumentException("invalid domain name batch");
-    if (response.statusCode() == HttpURLConnection.HTTP_INTERNAL_ERROR)
-      throw new UncheckedIOException(new InternalErrorArachnioException());
-    if (response.statusCode() != HttpURLConnection.HTTP_OK)
-      throw new UncheckedIOException(
-          new IOException("unrecognized failure " + response.statusCode()));
-
-    return Jackson.deserialize(ParsedDomainNameBatch.class, response.body());
+    return post("/domains/parse/batch", domainNameBatch, ParsedDomainNameBatch.class,
+        "invalid domain name batch", RequestPriority.BULK);
   }
 
 
   @Override
   public ExtractedLink extractLink(Link link) {
-    HttpResponse<String> response;
-    try {
-      response = getClient().send(HttpRequest
-          .newBuilder(URI.create(format("%s/links/extract", getBaseUrl())))
-          .header(BLOBR_API_KEY_HEADER_NAME, getKey())
-          .header(CONTENT_TYPE_HEADER_NAME, "application/json")
-          .POST(BodyPublishers.ofString(Jackson.serialize(link), StandardCharsets.UTF_8)).build(),
-          BodyHandlers.ofString(StandardCharsets.UTF_8));
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      throw new UncheckedIOException("interrupted", new InterruptedIOException());
-    } catch (IOException e) {
-      throw new UncheckedIOException(e);
-    }
-
-    if (response.statusCode() == HttpURLConnection.HTTP_FORBIDDEN)
-      throw new UncheckedIOException(new ForbiddenArachnioException());
-    if (response.statusCode() == HttpURLConnection.HTTP_BAD_REQUEST || response.statusCode() == 422)
-      throw new IllegalArgumentException("invalid link");
-    if (response.statusCode() == HttpURLConnection.HTTP_INTERNAL_ERROR)
-      throw new UncheckedIOException(new InternalErrorArachnioException());
-    if (response.statusCode() != HttpURLConnection.HTTP_OK)
-      throw new UncheckedIOException(
-          new IOException("unrecognized failure " + response.statusCode()));
-
-    return Jackson.deserialize(ExtractedLink.class, response.body());
+    return post("/links/extract", link, ExtractedLink.class, "invalid link",
+        RequestPriority.INTERACTIVE);
   }
 
 
   @Override
   public ParsedLink parseLink(Link link) {
-    HttpResponse<String> response;
-    try {
-      response = getClient().send(HttpRequest
-          .newBuilder(URI.create(format("%s/links/parse", getBaseUrl())))
-          .header(BLOBR_API_KEY_HEADER_NAME, getKey())
-          .header(CONTENT_TYPE_HEADER_NAME, "application/json")
-          .POST(BodyPublishers.ofString(Jackson.serialize(link), StandardCharsets.UTF_8)).build(),
-          BodyHandlers.ofString(StandardCharsets.UTF_8));
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      throw new UncheckedIOException("interrupted", new InterruptedIOException());
-    } catch (IOException e) {
-      throw new UncheckedIOException(e);
-    }
-
-    if (response.statusCode() == HttpURLConnection.HTTP_FORBIDDEN)
-      throw new UncheckedIOException(new ForbiddenArachnioException());
-    if (response.statusCode() == HttpURLConnection.HTTP_BAD_REQUEST || response.statusCode() == 422)
-      throw new IllegalArgumentException("invalid link");
-    if (response.statusCode() == HttpURLConnection.HTTP_INTERNAL_ERROR)
-      throw new UncheckedIOException(new InternalErrorArachnioException());
-    if (response.statusCode() != HttpURLConnection.HTTP_OK)
-      throw new UncheckedIOException(
-          new IOException("unrecognized failure " + response.statusCode()));
-
-    return Jackson.deserialize(ParsedLink.class, response.body());
+    return post("/links/parse", link, ParsedLink.class, "invalid link",
+        RequestPriority.INTERACTIVE);
   }
 
 
   @Override
   public ParsedLinkBatch parseLinkBatch(LinkBatch linkBatch) {
-    HttpResponse<String> response;
-    try {
-      response =
-          getClient()
-              .send(
-                  HttpRequest.newBuilder(URI.create(format("%s/links/parse/batch", getBaseUrl())))
-                      .header(BLOBR_API_KEY_HEADER_NAME, getKey())
-                      .header(CONTENT_TYPE_HEADER_NAME, "application/json")
-                      .POST(BodyPublishers.ofString(Jackson.serialize(linkBatch),
-                          StandardCharsets.UTF_8))
-                      .build(),
-                  BodyHandlers.ofString(StandardCharsets.UTF_8));
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      throw new UncheckedIOException("interrupted", new InterruptedIOException());
-    } catch (IOException e) {
-      throw new UncheckedIOException(e);
-    }
-
-    if (response.statusCode() == HttpURLConnection.HTTP_FORBIDDEN)
-      throw new UncheckedIOException(new ForbiddenArachnioException());
-    if (response.statusCode() == HttpURLConnection.HTTP_BAD_REQUEST || response.statusCode() == 422)
-      throw new IllegalArgumentException("invalid link batch");
-    if (response.statusCode() == HttpURLConnection.HTTP_INTERNAL_ERROR)
-      throw new UncheckedIOException(new InternalErrorArachnioException());
-    if (response.statusCode() != HttpURLConnection.HTTP_OK)
-      throw new UncheckedIOException(
-          new IOException("unrecognized failure " + response.statusCode()));
-
-    return Jackson.deserialize(ParsedLinkBatch.class, response.body());
+    return post("/links/parse/batch", linkBatch, ParsedLinkBatch.class, "invalid link batch",
+        RequestPriority.BULK);
   }
 
 
   @Override
   public UnwoundLink unwindLink(Link link) {
-    HttpResponse<String> response;
-    try {
-      response = getClient().send(HttpRequest
-          .newBuilder(URI.create(format("%s/links/unwind", getBaseUrl())))
-          .header(BLOBR_API_KEY_HEADER_NAME, getKey())
-          .header(CONTENT_TYPE_HEADER_NAME, "application/json")
-          .POST(BodyPublishers.ofString(Jackson.serialize(link), StandardCharsets.UTF_8)).build(),
-          BodyHandlers.ofString(StandardCharsets.UTF_8));
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      throw new UncheckedIOException("interrupted", new InterruptedIOException());
-    } catch (IOException e) {
-      throw new UncheckedIOException(e);
-    }
-
-    if (response.statusCode() == HttpURLConnection.HTTP_FORBIDDEN)
-      throw new UncheckedIOException(new ForbiddenArachnioException());
-    if (response.statusCode() == HttpURLConnection.HTTP_BAD_REQUEST || response.statusCode() == 422)
-      throw new IllegalArgumentException("invalid domain name");
-    if (response.statusCode() == HttpURLConnection.HTTP_INTERNAL_ERROR)
-      throw new UncheckedIOException(new InternalErrorArachnioException());
-    if (response.statusCode() != HttpURLConnection.HTTP_OK)
-      throw new UncheckedIOException(
-          new IOException("unrecognized failure " + response.statusCode()));
-
-    return Jackson.deserialize(UnwoundLink.class, response.body());
+    return post("/links/unwind", link, UnwoundLink.class, "invalid domain name",
+        RequestPriority.INTERACTIVE);
   }
 
 
   @Override
   public UnwoundLinkBatch unwindLinkBatch(LinkBatch linkBatch) {
-    HttpResponse<String> response;
-    try {
-      response =
-          getClient()
-              .send(
-                  HttpRequest.newBuilder(URI.create(format("%s/links/unwind/batch", getBaseUrl())))
-                      .header(BLOBR_API_KEY_HEADER_NAME, getKey())
-                      .header(CONTENT_TYPE_HEADER_NAME, "application/json")
-                      .POST(BodyPublishers.ofString(Jackson.serialize(linkBatch),
-                          StandardCharsets.UTF_8))
-                      .build(),
-                  BodyHandlers.ofString(StandardCharsets.UTF_8));
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      throw new UncheckedIOException("interrupted", new InterruptedIOException());
+    return post("/links/unwind/batch", linkBatch, UnwoundLinkBatch.class, "invalid link batch",
+        RequestPriority.BULK);
+  }
+
+  private <T> T post(String path, Object requestBody, Class<T> responseType,
+      String invalidMessage, RequestPriority defaultPriority) {
+    Map<String, String> headers = new LinkedHashMap<>();
+    headers.put(BLOBR_API_KEY_HEADER_NAME, getKey());
+    headers.put(CONTENT_TYPE_HEADER_NAME, getCodec().getContentType());
+    headers.put(ACCEPT_HEADER_NAME, acceptHeaderValue(getCodec()));
+    TransportRequest request =
+        new TransportRequest(URI.create(format("%s%s", getBaseUrl(), path)), headers,
+            getCodec().serialize(requestBody));
+
+    // We decode inside the scheduler slot because streaming transports are still reading the
+    // response body at that point.
+    return getScheduler().execute(priority != null ? priority : defaultPriority,
+        () -> exchange(request, responseType, invalidMessage));
+  }
+
+  private <T> T exchange(TransportRequest request, Class<T> responseType, String invalidMessage) {
+    try (TransportResponse response = getTransport().send(request)) {
+      if (response.getStatusCode() == HttpURLConnection.HTTP_FORBIDDEN)
+        throw new UncheckedIOException(new ForbiddenArachnioException());
+      if (response.getStatusCode() == HttpURLConnection.HTTP_BAD_REQUEST
+          || response.getStatusCode() == 422)
+        throw new IllegalArgumentException(invalidMessage);
+      if (response.getStatusCode() == HttpURLConnection.HTTP_INTERNAL_ERROR)
+        throw new UncheckedIOException(new InternalErrorArachnioException());
+      if (response.getStatusCode() != HttpURLConnection.HTTP_OK)
+        throw new UncheckedIOException(
+            new UnrecognizedStatusArachnioException(response.getStatusCode()));
+
+      Codec responseCodec =
+          response.getContentType().flatMap(JacksonCodec::forContentType).orElse(getCodec());
+
+      return responseCodec.deserialize(responseType, response.getBody());
+    } catch (InterruptedIOException e) {
+      throw new UncheckedIOException("interrupted", e);
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
-
-    if (response.statusCode() == HttpURLConnection.HTTP_FORBIDDEN)
-      throw new UncheckedIOException(new ForbiddenArachnioException());
-    if (response.statusCode() == HttpURLConnection.HTTP_BAD_REQUEST || response.statusCode() == 422)
-      throw new IllegalArgumentException("invalid link batch");
-    if (response.statusCode() == HttpURLConnection.HTTP_INTERNAL_ERROR)
-      throw new UncheckedIOException(new InternalErrorArachnioException());
-    if (response.statusCode() != HttpURLConnection.HTTP_OK)
-      throw new UncheckedIOException(
-          new IOException("unrecognized failure " + response.statusCode()));
-
-    return Jackson.deserialize(UnwoundLinkBatch.class, response.body());
   }
 
   /**
-   * @return the client
+   * We always accept JSON as a fallback so that servers without binary support still work.
    */
-  private HttpClient getClient() {
-    return client;
+  private static String acceptHeaderValue(Codec codec) {
+    if (codec.getContentType().equals(JacksonCodec.JSON_CONTENT_TYPE))
+      return JacksonCodec.JSON_CONTENT_TYPE;
+    return codec.getContentType() + ", " + JacksonCodec.JSON_CONTENT_TYPE + ";q=0.5";
   }
 
   /**
@@ -338,4 +318,11 @@ public class DefaultArachnioClient implements ArachnioClient {
   private String getKey() {
     return key;
   }
+
+  /**
+   * @return the codec
+   */
+  private Codec getCodec() {
+    return codec;
+  }
 }
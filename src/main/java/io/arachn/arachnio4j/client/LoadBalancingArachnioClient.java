@@ -0,0 +1,517 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.client;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import io.arachn.arachnio4j.ArachnioClient;
+import io.arachn.arachnio4j.exception.ForbiddenArachnioException;
+import io.arachn.arachnio4j.exception.InternalErrorArachnioException;
+import io.arachn.arachnio4j.exception.UnrecognizedStatusArachnioException;
+import io.arachn.spi.model.DomainName;
+import io.arachn.spi.model.DomainNameBatch;
+import io.arachn.spi.model.ExtractedLink;
+import io.arachn.spi.model.Link;
+import io.arachn.spi.model.LinkBatch;
+import io.arachn.spi.model.ParsedDomainName;
+import io.arachn.spi.model.ParsedDomainNameBatch;
+import io.arachn.spi.model.ParsedLink;
+import io.arachn.spi.model.ParsedLinkBatch;
+import io.arachn.spi.model.UnwoundLink;
+import io.arachn.spi.model.UnwoundLinkBatch;
+
+/**
+ * Spreads requests over several (base URL, API key) pairs, e.g., to combine the quotas of
+ * multiple subscriptions.
+ * 
+ * <p>
+ * An endpoint that responds with {@code 403 Forbidden} is ejected immediately, since that usually
+ * means its quota is exhausted. An endpoint that fails with a server error or a transport error,
+ * i.e., a failure to connect, a timeout, or a dropped connection, {@code failureThreshold} times in
+ * a row is also ejected. Other failures, like a response that cannot be decoded, say nothing about
+ * the endpoint's health, so they are neither counted against it nor retried. Ejected endpoints are not chosen again
+ * until {@code ejectionDuration} has elapsed. A request that fails with one of these errors is
+ * retried on another endpoint, if one is available. If every endpoint is ejected, the one that
+ * will return soonest is used anyway rather than failing outright.
+ */
+public class LoadBalancingArachnioClient implements ArachnioClient {
+  public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+  public static final Duration DEFAULT_EJECTION_DURATION = Duration.ofSeconds(30);
+
+  public static enum Strategy {
+    /**
+     * Smooth weighted round-robin. Each endpoint receives requests in proportion to its weight,
+     * interleaved rather than in bursts.
+     */
+    WEIGHTED_ROUND_ROBIN,
+
+    /**
+     * Chooses the endpoint with the fewest in-flight requests relative to its weight.
+     */
+    LEAST_OUTSTANDING_REQUESTS;
+  }
+
+  public static final class Endpoint {
+    private final String baseUrl;
+    private final String key;
+    private final int weight;
+
+    public Endpoint(String baseUrl, String key) {
+      this(baseUrl, key, 1);
+    }
+
+    public Endpoint(String baseUrl, String key, int weight) {
+      if (weight < 1)
+        throw new IllegalArgumentException("weight must be positive");
+      this.baseUrl = requireNonNull(baseUrl);
+      this.key = requireNonNull(key);
+      this.weight = weight;
+    }
+
+    /**
+     * @return the baseUrl
+     */
+    public String getBaseUrl() {
+      return baseUrl;
+    }
+
+    /**
+     * @return the key
+     */
+    public String getKey() {
+      return key;
+    }
+
+    /**
+     * @return the weight
+     */
+    public int getWeight() {
+      return weight;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(baseUrl, key, weight);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (obj == null)
+        return false;
+      if (getClass() != obj.getClass())
+        return false;
+      Endpoint other = (Endpoint) obj;
+      return Objects.equals(baseUrl, other.baseUrl) && Objects.equals(key, other.key)
+          && weight == other.weight;
+    }
+
+    /**
+     * Never includes the key.
+     */
+    @Override
+    public String toString() {
+      return "Endpoint [baseUrl=" + baseUrl + ", weight=" + weight + "]";
+    }
+  }
+
+  /**
+   * A point-in-time snapshot of one endpoint's usage.
+   */
+  public static final class EndpointStats {
+    private final Endpoint endpoint;
+    private final long requests;
+    private final long successes;
+    private final long failures;
+    private final long ejections;
+    private final int outstanding;
+    private final boolean ejected;
+
+    public EndpointStats(Endpoint endpoint, long requests, long successes, long failures,
+        long ejections, int outstanding, boolean ejected) {
+      this.endpoint = requireNonNull(endpoint);
+      this.requests = requests;
+      this.successes = successes;
+      this.failures = failures;
+      this.ejections = ejections;
+      this.outstanding = outstanding;
+      this.ejected = ejected;
+    }
+
+    /**
+     * @return the endpoint
+     */
+    public Endpoint getEndpoint() {
+      return endpoint;
+    }
+
+    /**
+     * @return the number of requests sent to this endpoint, including those in flight
+     */
+    public long getRequests() {
+      return requests;
+    }
+
+    /**
+     * @return the successes
+     */
+    public long getSuccesses() {
+      return successes;
+    }
+
+    /**
+     * @return the number of requests that failed for any reason
+     */
+    public long getFailures() {
+      return failures;
+    }
+
+    /**
+     * @return the number of times this endpoint has been ejected
+     */
+    public long getEjections() {
+      return ejections;
+    }
+
+    /**
+     * @return the number of requests currently in flight
+     */
+    public int getOutstanding() {
+      return outstanding;
+    }
+
+    /**
+     * @return true if the endpoint is currently ejected
+     */
+    public boolean isEjected() {
+      return ejected;
+    }
+
+    @Override
+    public String toString() {
+      return "EndpointStats [endpoint=" + endpoint + ", requests=" + requests + ", successes="
+          + successes + ", failures=" + failures + ", ejections=" + ejections + ", outstanding="
+          + outstanding + ", ejected=" + ejected + "]";
+    }
+  }
+
+  private static final class Member {
+    public final Endpoint endpoint;
+    public final ArachnioClient client;
+    public final AtomicInteger outstanding = new AtomicInteger();
+    public final AtomicLong requests = new AtomicLong();
+    public final AtomicLong successes = new AtomicLong();
+    public final AtomicLong failures = new AtomicLong();
+    public final AtomicLong ejections = new AtomicLong();
+
+    /**
+     * Guarded by the enclosing client's lock.
+     */
+    public int currentWeight;
+
+    /**
+     * Guarded by the enclosing client's lock.
+     */
+    public int consecutiveFailures;
+
+    /**
+     * Guarded by the enclosing client's lock. Compared against {@link System#nanoTime()}.
+     */
+    public long ejectedUntil;
+
+    /**
+     * Guarded by the enclosing client's lock.
+     */
+    public boolean ejected;
+
+    public Member(Endpoint endpoint, ArachnioClient client) {
+      this.endpoint = requireNonNull(endpoint);
+      this.client = requireNonNull(client);
+    }
+  }
+
+  private final List<Member> members;
+  private final Strategy strategy;
+  private final int failureThreshold;
+  private final long ejectionNanos;
+  private final Object lock = new Object();
+
+  public LoadBalancingArachnioClient(List<Endpoint> endpoints) {
+    this(endpoints, Strategy.WEIGHTED_ROUND_ROBIN);
+  }
+
+  public LoadBalancingArachnioClient(List<Endpoint> endpoints, Strategy strategy) {
+    this(DefaultArachnioClient.defaultClient(), endpoints, strategy, DEFAULT_FAILURE_THRESHOLD,
+        DEFAULT_EJECTION_DURATION);
+  }
+
+  /**
+   * All endpoints share the given {@link HttpClient}, and therefore its connection pool.
+   */
+  public LoadBalancingArachnioClient(HttpClient client, List<Endpoint> endpoints,
+      Strategy strategy, int failureThreshold, Duration ejectionDuration) {
+    this(endpoints, e -> new DefaultArachnioClient(client, e.getBaseUrl(), e.getKey()), strategy,
+        failureThreshold, ejectionDuration);
+  }
+
+  public LoadBalancingArachnioClient(List<Endpoint> endpoints,
+      Function<Endpoint, ArachnioClient> clientFactory, Strategy strategy, int failureThreshold,
+      Duration ejectionDuration) {
+    if (endpoints.isEmpty())
+      throw new IllegalArgumentException("no endpoints");
+    if (failureThreshold < 1)
+      throw new IllegalArgumentException("failureThreshold must be positive");
+    if (ejectionDuration.isNegative())
+      throw new IllegalArgumentException("ejectionDuration must not be negative");
+    this.members = endpoints.stream().map(e -> new Member(e, clientFactory.apply(e)))
+        .collect(toList());
+    this.strategy = requireNonNull(strategy);
+    this.failureThreshold = failureThreshold;
+    this.ejectionNanos = ejectionDuration.toNanos();
+  }
+
+  /**
+   * Warms up the client of every endpoint, including ejected ones.
+   */
+  @Override
+  public void warmUp() {
+    for (Member m : members)
+      m.client.warmUp();
+  }
+
+  @Override
+  public ParsedDomainName parseDomainName(DomainName domainName) {
+    return call(c -> c.parseDomainName(domainName));
+  }
+
+  @Override
+  public ParsedDomainNameBatch parseDomainNameBatch(DomainNameBatch domainNameBatch) {
+    return call(c -> c.parseDomainNameBatch(domainNameBatch));
+  }
+
+  @Override
+  public ExtractedLink extractLink(Link link) {
+    return call(c -> c.extractLink(link));
+  }
+
+  @Override
+  public ParsedLink parseLink(Link link) {
+    return call(c -> c.parseLink(link));
+  }
+
+  @Override
+  public ParsedLinkBatch parseLinkBatch(LinkBatch linkBatch) {
+    return call(c -> c.parseLinkBatch(linkBatch));
+  }
+
+  @Override
+  public UnwoundLink unwindLink(Link link) {
+    return call(c -> c.unwindLink(link));
+  }
+
+  @Override
+  public UnwoundLinkBatch unwindLinkBatch(LinkBatch linkBatch) {
+    return call(c -> c.unwindLinkBatch(linkBatch));
+  }
+
+  /**
+   * @return a snapshot of the usage of each endpoint, in the order the endpoints were given
+   */
+  public List<EndpointStats> getEndpointStats() {
+    List<EndpointStats> result = new ArrayList<>(members.size());
+    synchronized (lock) {
+      long now = System.nanoTime();
+      for (Member m : members)
+        result.add(new EndpointStats(m.endpoint, m.requests.get(), m.successes.get(),
+            m.failures.get(), m.ejections.get(), m.outstanding.get(), isEjected(m, now)));
+    }
+    return unmodifiableList(result);
+  }
+
+  private <T> T call(Function<ArachnioClient, T> request) {
+    List<Member> tried = new ArrayList<>(2);
+    while (true) {
+      Member member = choose(tried);
+      tried.add(member);
+
+      member.requests.incrementAndGet();
+      member.outstanding.incrementAndGet();
+      try {
+        T result = request.apply(member.client);
+        member.successes.incrementAndGet();
+        onSuccess(member);
+        return result;
+      } catch (UncheckedIOException e) {
+        member.failures.incrementAndGet();
+        if (!onFailure(member, e) || tried.size() >= members.size())
+          throw e;
+      } catch (RuntimeException e) {
+        // Bad requests and the like are the caller's problem, not the endpoint's.
+        member.failures.incrementAndGet();
+        throw e;
+      } finally {
+        member.outstanding.decrementAndGet();
+      }
+    }
+  }
+
+  private Member choose(List<Member> exclude) {
+    synchronized (lock) {
+      long now = System.nanoTime();
+
+      List<Member> candidates = new ArrayList<>(members.size());
+      for (Member m : members)
+        if (!exclude.contains(m) && !isEjected(m, now))
+          candidates.add(m);
+
+      if (candidates.isEmpty()) {
+        // Everything is ejected. Fail open with whichever endpoint comes back first.
+        Member soonest = null;
+        for (Member m : members)
+          if (!exclude.contains(m) && (soonest == null || m.ejectedUntil - soonest.ejectedUntil < 0))
+            soonest = m;
+        return soonest;
+      }
+
+      switch (strategy) {
+        case LEAST_OUTSTANDING_REQUESTS:
+          return chooseLeastOutstanding(candidates);
+        case WEIGHTED_ROUND_ROBIN:
+        default:
+          return chooseWeightedRoundRobin(candidates);
+      }
+    }
+  }
+
+  /**
+   * The "smooth weighted round-robin" algorithm from nginx. Must hold lock.
+   */
+  private static Member chooseWeightedRoundRobin(List<Member> candidates) {
+    int totalWeight = 0;
+    Member best = null;
+    for (Member m : candidates) {
+      m.currentWeight = m.currentWeight + m.endpoint.getWeight();
+      totalWeight = totalWeight + m.endpoint.getWeight();
+      if (best == null || m.currentWeight > best.currentWeight)
+        best = m;
+    }
+    best.currentWeight = best.currentWeight - totalWeight;
+    return best;
+  }
+
+  /**
+   * Ties go to the endpoint with the higher weight, then the earlier endpoint. Must hold lock.
+   */
+  private static Member chooseLeastOutstanding(List<Member> candidates) {
+    Member best = null;
+    for (Member m : candidates) {
+      if (best == null) {
+        best = m;
+      } else {
+        // Compare m.outstanding/m.weight < best.outstanding/best.weight without division
+        long lhs = (long) m.outstanding.get() * best.endpoint.getWeight();
+        long rhs = (long) best.outstanding.get() * m.endpoint.getWeight();
+        if (lhs < rhs || (lhs == rhs && m.endpoint.getWeight() > best.endpoint.getWeight()))
+          best = m;
+      }
+    }
+    return best;
+  }
+
+  private void onSuccess(Member member) {
+    synchronized (lock) {
+      member.consecutiveFailures = 0;
+    }
+  }
+
+  /**
+   * @return true if the request should be retried on another endpoint
+   */
+  private boolean onFailure(Member member, UncheckedIOException e) {
+    Throwable cause = e.getCause();
+    synchronized (lock) {
+      if (cause instanceof ForbiddenArachnioException) {
+        eject(member);
+        return true;
+      }
+
+      boolean serverError = cause instanceof InternalErrorArachnioException
+          || (cause instanceof UnrecognizedStatusArachnioException
+              && ((UnrecognizedStatusArachnioException) cause).isServerError())
+          || isTransportError(cause);
+      if (!serverError)
+        return false;
+
+      member.consecutiveFailures = member.consecutiveFailures + 1;
+      if (member.consecutiveFailures >= failureThreshold)
+        eject(member);
+
+      return true;
+    }
+  }
+
+  /**
+   * The JDK client and our transports report most dropped connections as plain IOExceptions, so
+   * those count too. Subclasses that mean something else, like a decoding error or an interrupt,
+   * do not.
+   */
+  private static boolean isTransportError(Throwable cause) {
+    return cause instanceof SocketException || cause instanceof SocketTimeoutException
+        || cause instanceof HttpTimeoutException || cause instanceof EOFException
+        || (cause != null && cause.getClass() == IOException.class);
+  }
+
+  /**
+   * Must hold lock.
+   */
+  private void eject(Member member) {
+    member.consecutiveFailures = 0;
+    member.currentWeight = 0;
+    member.ejectedUntil = System.nanoTime() + ejectionNanos;
+    member.ejected = true;
+    member.ejections.incrementAndGet();
+  }
+
+  /**
+   * Must hold lock.
+   */
+  private static boolean isEjected(Member member, long now) {
+    if (member.ejected && now - member.ejectedUntil >= 0)
+      member.ejected = false;
+    return member.ejected;
+  }
+}
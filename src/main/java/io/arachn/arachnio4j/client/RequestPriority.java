@@ -0,0 +1,36 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.client;
+
+/**
+ * The lanes of a {@link RequestScheduler}.
+ */
+public enum RequestPriority {
+  /**
+   * Latency-sensitive requests, e.g., a user waiting on a single link preview. This is the default
+   * for single-entity requests.
+   */
+  INTERACTIVE,
+
+  /**
+   * Throughput-oriented background work. This is the default for batch requests.
+   */
+  BULK;
+}
@@ -0,0 +1,343 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.client;
+
+import static java.util.Objects.requireNonNull;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Shares a fixed concurrency budget among {@link RequestPriority priority lanes} using start-time
+ * fair queuing. When every lane has work waiting, each lane gets a share of the budget in
+ * proportion to its weight. A lane with nothing waiting gives its share to the others. Within a
+ * lane, requests are served in arrival order.
+ *
+ * <p>
+ * A request that arrives in an idle lane is served as soon as a slot frees up, no matter how many
+ * requests are queued in other lanes, so a burst of bulk work cannot starve interactive requests.
+ *
+ * <p>
+ * A scheduler with a budget of {@link Integer#MAX_VALUE} never queues, so it skips the fair queue
+ * and its lock entirely and only counts requests.
+ */
+public class RequestScheduler {
+  public static final int DEFAULT_INTERACTIVE_WEIGHT = 16;
+
+  public static final int DEFAULT_BULK_WEIGHT = 1;
+
+  /**
+   * A point-in-time snapshot of one lane.
+   */
+  public static final class LaneStats {
+    private final RequestPriority priority;
+    private final int queueDepth;
+    private final int running;
+    private final long requests;
+    private final Duration totalWait;
+    private final Duration maxWait;
+
+    public LaneStats(RequestPriority priority, int queueDepth, int running, long requests,
+        Duration totalWait, Duration maxWait) {
+      this.priority = requireNonNull(priority);
+      this.queueDepth = queueDepth;
+      this.running = running;
+      this.requests = requests;
+      this.totalWait = requireNonNull(totalWait);
+      this.maxWait = requireNonNull(maxWait);
+    }
+
+    /**
+     * @return the priority
+     */
+    public RequestPriority getPriority() {
+      return priority;
+    }
+
+    /**
+     * @return the number of requests waiting for a slot
+     */
+    public int getQueueDepth() {
+      return queueDepth;
+    }
+
+    /**
+     * @return the number of requests holding a slot
+     */
+    public int getRunning() {
+      return running;
+    }
+
+    /**
+     * @return the number of requests that have been granted a slot
+     */
+    public long getRequests() {
+      return requests;
+    }
+
+    /**
+     * @return the total time granted requests spent waiting for a slot
+     */
+    public Duration getTotalWait() {
+      return totalWait;
+    }
+
+    /**
+     * @return the longest time any granted request spent waiting for a slot
+     */
+    public Duration getMaxWait() {
+      return maxWait;
+    }
+
+    /**
+     * @return the mean time granted requests spent waiting for a slot
+     */
+    public Duration getMeanWait() {
+      return requests == 0L ? Duration.ZERO : totalWait.dividedBy(requests);
+    }
+
+    @Override
+    public String toString() {
+      return "LaneStats [priority=" + priority + ", queueDepth=" + queueDepth + ", running="
+          + running + ", requests=" + requests + ", totalWait=" + totalWait + ", maxWait="
+          + maxWait + "]";
+    }
+  }
+
+  /**
+   * @return a scheduler that never makes anyone wait, but still keeps per-lane request counts
+   */
+  public static RequestScheduler unbounded() {
+    return new RequestScheduler(Integer.MAX_VALUE);
+  }
+
+  private static final class Ticket {
+    public final Lane lane;
+    public final double start;
+    public final Condition granted;
+    public final long enqueued;
+    public boolean ready;
+
+    public Ticket(Lane lane, double start, Condition granted) {
+      this.lane = lane;
+      this.start = start;
+      this.granted = granted;
+      this.enqueued = System.nanoTime();
+    }
+  }
+
+  private static final class Lane {
+    public final RequestPriority priority;
+    public final double weight;
+    public final ArrayDeque<Ticket> queue = new ArrayDeque<>();
+    public double lastFinish;
+    public int running;
+    public long requests;
+    public long totalWaitNanos;
+    public long maxWaitNanos;
+
+    /**
+     * Used instead of the fields above when the budget is unbounded
+     */
+    public final AtomicInteger unboundedRunning = new AtomicInteger();
+    public final LongAdder unboundedRequests = new LongAdder();
+
+    public Lane(RequestPriority priority, int weight) {
+      this.priority = priority;
+      this.weight = weight;
+    }
+  }
+
+  private final int maxConcurrency;
+  private final boolean unbounded;
+  private final Map<RequestPriority, Lane> lanes;
+  private final ReentrantLock lock = new ReentrantLock();
+  private int running;
+  private double virtualTime;
+
+  public RequestScheduler(int maxConcurrency) {
+    this(maxConcurrency, defaultWeights());
+  }
+
+  /**
+   * @param weights the relative share of the budget for each lane. Every priority must be present.
+   */
+  public RequestScheduler(int maxConcurrency, Map<RequestPriority, Integer> weights) {
+    if (maxConcurrency < 1)
+      throw new IllegalArgumentException("maxConcurrency must be positive");
+    Map<RequestPriority, Lane> lanes = new EnumMap<>(RequestPriority.class);
+    for (RequestPriority priority : RequestPriority.values()) {
+      Integer weight = weights.get(priority);
+      if (weight == null)
+        throw new IllegalArgumentException("no weight for " + priority);
+      if (weight < 1)
+        throw new IllegalArgumentException("weight must be positive");
+      lanes.put(priority, new Lane(priority, weight));
+    }
+    this.maxConcurrency = maxConcurrency;
+    this.unbounded = maxConcurrency == Integer.MAX_VALUE;
+    this.lanes = Collections.unmodifiableMap(lanes);
+  }
+
+  /**
+   * Waits for a slot in the given lane, then runs the given task while holding it.
+   *
+   * @throws UncheckedIOException wrapping {@link InterruptedIOException} if interrupted while
+   *         waiting
+   */
+  public <T> T execute(RequestPriority priority, Supplier<T> task) {
+    if (unbounded)
+      return executeUnbounded(requireNonNull(priority), task);
+
+    Lane lane = acquire(requireNonNull(priority));
+    try {
+      return task.get();
+    } finally {
+      release(lane);
+    }
+  }
+
+  /**
+   * Nobody ever waits, so there is nothing to queue or lock
+   */
+  private <T> T executeUnbounded(RequestPriority priority, Supplier<T> task) {
+    Lane lane = lanes.get(priority);
+    lane.unboundedRequests.increment();
+    lane.unboundedRunning.incrementAndGet();
+    try {
+      return task.get();
+    } finally {
+      lane.unboundedRunning.decrementAndGet();
+    }
+  }
+
+  /**
+   * @return the maxConcurrency
+   */
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  public LaneStats getLaneStats(RequestPriority priority) {
+    if (unbounded) {
+      Lane lane = lanes.get(priority);
+      return new LaneStats(lane.priority, 0, lane.unboundedRunning.get(),
+          lane.unboundedRequests.sum(), Duration.ZERO, Duration.ZERO);
+    }
+
+    lock.lock();
+    try {
+      Lane lane = lanes.get(priority);
+      return new LaneStats(lane.priority, lane.queue.size(), lane.running, lane.requests,
+          Duration.ofNanos(lane.totalWaitNanos), Duration.ofNanos(lane.maxWaitNanos));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Lane acquire(RequestPriority priority) {
+    lock.lock();
+    try {
+      Lane lane = lanes.get(priority);
+      double start = Math.max(virtualTime, lane.lastFinish);
+      lane.lastFinish = start + 1.0 / lane.weight;
+
+      Ticket ticket = new Ticket(lane, start, lock.newCondition());
+      lane.queue.addLast(ticket);
+      dispatch();
+
+      while (!ticket.ready) {
+        try {
+          ticket.granted.await();
+        } catch (InterruptedException e) {
+          if (ticket.ready) {
+            // We got a slot at the same time. Give it back.
+            release(lane);
+          } else {
+            lane.queue.remove(ticket);
+          }
+          Thread.currentThread().interrupt();
+          throw new UncheckedIOException("interrupted", new InterruptedIOException());
+        }
+      }
+
+      return lane;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void release(Lane lane) {
+    lock.lock();
+    try {
+      lane.running = lane.running - 1;
+      running = running - 1;
+      dispatch();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Grants free slots to the waiting tickets with the smallest start tags. Must hold lock.
+   */
+  private void dispatch() {
+    while (running < maxConcurrency) {
+      Ticket next = null;
+      for (Lane lane : lanes.values()) {
+        Ticket head = lane.queue.peekFirst();
+        if (head != null && (next == null || head.start < next.start))
+          next = head;
+      }
+      if (next == null)
+        break;
+
+      Lane lane = next.lane;
+      lane.queue.removeFirst();
+      virtualTime = next.start;
+
+      long wait = System.nanoTime() - next.enqueued;
+      lane.requests = lane.requests + 1;
+      lane.totalWaitNanos = lane.totalWaitNanos + wait;
+      lane.maxWaitNanos = Math.max(lane.maxWaitNanos, wait);
+      lane.running = lane.running + 1;
+      running = running + 1;
+
+      next.ready = true;
+      next.granted.signal();
+    }
+  }
+
+  private static Map<RequestPriority, Integer> defaultWeights() {
+    Map<RequestPriority, Integer> result = new EnumMap<>(RequestPriority.class);
+    result.put(RequestPriority.INTERACTIVE, DEFAULT_INTERACTIVE_WEIGHT);
+    result.put(RequestPriority.BULK, DEFAULT_BULK_WEIGHT);
+    return result;
+  }
+}
@@ -0,0 +1,81 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.crawl;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A link the {@link Crawler} has discovered, or a seed.
+ */
+public class CrawlLink {
+  private final String url;
+  private final String host;
+  private final int depth;
+  private final String referrer;
+  private final String anchorText;
+
+  public CrawlLink(String url, String host, int depth, String referrer, String anchorText) {
+    this.url = requireNonNull(url);
+    this.host = requireNonNull(host);
+    this.depth = depth;
+    this.referrer = referrer;
+    this.anchorText = anchorText;
+  }
+
+  /**
+   * @return the canonical url
+   */
+  public String getUrl() {
+    return url;
+  }
+
+  /**
+   * @return the host, including the port if it is not the default
+   */
+  public String getHost() {
+    return host;
+  }
+
+  /**
+   * @return the number of links between the nearest seed and this link. Seeds have depth 0.
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * @return the canonical url of the page this link was found on, or null for seeds
+   */
+  public String getReferrer() {
+    return referrer;
+  }
+
+  /**
+   * @return the anchor text of this link, or null if none is known
+   */
+  public String getAnchorText() {
+    return anchorText;
+  }
+
+  @Override
+  public String toString() {
+    return "CrawlLink [url=" + url + ", depth=" + depth + "]";
+  }
+}
@@ -0,0 +1,62 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.crawl;
+
+import static java.util.Objects.requireNonNull;
+import io.arachn.spi.model.ExtractedLink;
+
+/**
+ * The outcome of extracting one link during a crawl. Exactly one of {@link #getResult()} and
+ * {@link #getError()} is non-null.
+ */
+public class CrawlPage {
+  private final CrawlLink link;
+  private final ExtractedLink result;
+  private final RuntimeException error;
+
+  public CrawlPage(CrawlLink link, ExtractedLink result, RuntimeException error) {
+    if ((result == null) == (error == null))
+      throw new IllegalArgumentException("exactly one of result and error must be given");
+    this.link = requireNonNull(link);
+    this.result = result;
+    this.error = error;
+  }
+
+  /**
+   * @return the link
+   */
+  public CrawlLink getLink() {
+    return link;
+  }
+
+  /**
+   * @return the result, or null if extraction failed
+   */
+  public ExtractedLink getResult() {
+    return result;
+  }
+
+  /**
+   * @return the error, or null if extraction succeeded
+   */
+  public RuntimeException getError() {
+    return error;
+  }
+}
@@ -0,0 +1,92 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.crawl;
+
+/**
+ * Counts from one {@link Crawler} run.
+ */
+public class CrawlSummary {
+  private final long pages;
+  private final long successes;
+  private final long failures;
+  private final long duplicates;
+  private final long dropped;
+  private final long remaining;
+
+  public CrawlSummary(long pages, long successes, long failures, long duplicates, long dropped,
+      long remaining) {
+    this.pages = pages;
+    this.successes = successes;
+    this.failures = failures;
+    this.duplicates = duplicates;
+    this.dropped = dropped;
+    this.remaining = remaining;
+  }
+
+  /**
+   * @return the number of links extracted, successfully or not
+   */
+  public long getPages() {
+    return pages;
+  }
+
+  /**
+   * @return the number of links extracted successfully
+   */
+  public long getSuccesses() {
+    return successes;
+  }
+
+  /**
+   * @return the number of links that failed to extract
+   */
+  public long getFailures() {
+    return failures;
+  }
+
+  /**
+   * @return the number of discovered links skipped because their canonical URL was already seen
+   */
+  public long getDuplicates() {
+    return duplicates;
+  }
+
+  /**
+   * @return the number of discovered links skipped because the frontier was full, or because
+   *         their priority was too low
+   */
+  public long getDropped() {
+    return dropped;
+  }
+
+  /**
+   * @return the number of queued links left unvisited when the crawl reached its page limit
+   */
+  public long getRemaining() {
+    return remaining;
+  }
+
+  @Override
+  public String toString() {
+    return "CrawlSummary [pages=" + pages + ", successes=" + successes + ", failures=" + failures
+        + ", duplicates=" + duplicates + ", dropped=" + dropped + ", remaining=" + remaining
+        + "]";
+  }
+}
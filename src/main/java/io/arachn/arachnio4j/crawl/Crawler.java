@@ -0,0 +1,545 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.crawl;
+
+import static java.util.Objects.requireNonNull;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import io.arachn.arachnio4j.ArachnioClient;
+import io.arachn.arachnio4j.bulk.SeenUrlFilter;
+import io.arachn.arachnio4j.util.UrlCanonicalizer;
+import io.arachn.spi.model.ArticleWebpageEntityMetadata;
+import io.arachn.spi.model.ExtractedLink;
+import io.arachn.spi.model.Hyperlink;
+
+/**
+ * Crawls outward from seed URLs by {@link ArachnioClient#extractLink(String) extracting} each page
+ * and following the links in its body.
+ *
+ * <p>
+ * Links are deduplicated by canonical URL through a {@link SeenUrlFilter} of the links queued in
+ * this crawl, so a link is visited at most once no matter how many pages link to it. A crawl can
+ * also skip pages that earlier crawls extracted through a {@link #seen(SeenUrlFilter) persistent
+ * filter}. Queued links are kept per host. Workers take
+ * hosts in turn and send at most {@link #maxPerHost(int) maxPerHost} concurrent requests per host,
+ * so no single site dominates the crawl. Within a host, links with higher
+ * {@link #priority(ToIntFunction) priority} go first, and links of equal priority go in the order
+ * they were discovered, which makes the crawl breadth-first.
+ *
+ * <p>
+ * Memory use is bounded. At most {@link #maxQueued(int) maxQueued} links are queued at once, and
+ * links discovered while the frontier is full are dropped, but not marked as seen, so another page
+ * can rediscover them later. The filters live off-heap.
+ *
+ * <p>
+ * Filters have false positives, so a few unique links are counted as duplicates and never
+ * visited. The filter of queued links runs at {@link #QUEUED_FALSE_POSITIVE_RATE}, or about one
+ * lost link per million, at a cost of about 3.8 bytes per link. The persistent filter runs at
+ * whatever rate it was created with.
+ *
+ * <p>
+ * A crawl that should not compete with interactive traffic should use a client in the
+ * {@link io.arachn.arachnio4j.client.RequestPriority#BULK bulk} lane, e.g., from
+ * {@link io.arachn.arachnio4j.client.DefaultArachnioClient#withPriority withPriority}.
+ */
+public class Crawler {
+  /**
+   * The false positive rate of the filter of links queued in a crawl, i.e., the fraction of unique
+   * links mistaken for duplicates
+   */
+  public static final double QUEUED_FALSE_POSITIVE_RATE = 1e-6;
+
+  public static enum Follow {
+    /**
+     * Follow every link in the page body
+     */
+    ALL_LINKS,
+
+    /**
+     * Follow only links to other sites
+     */
+    OUTLINKS,
+
+    /**
+     * Follow only links within the same site
+     */
+    INTERNAL_LINKS;
+  }
+
+  public static final int DEFAULT_PARALLELISM = 8;
+
+  public static final int DEFAULT_MAX_DEPTH = 2;
+
+  public static final long DEFAULT_MAX_PAGES = 10000L;
+
+  public static final int DEFAULT_MAX_QUEUED = 100000;
+
+  public static final int DEFAULT_MAX_PER_HOST = 2;
+
+  private final ArachnioClient client;
+  private int parallelism = DEFAULT_PARALLELISM;
+  private int maxDepth = DEFAULT_MAX_DEPTH;
+  private long maxPages = DEFAULT_MAX_PAGES;
+  private int maxQueued = DEFAULT_MAX_QUEUED;
+  private int maxPerHost = DEFAULT_MAX_PER_HOST;
+  private Follow follow = Follow.ALL_LINKS;
+  private UrlCanonicalizer canonicalizer = UrlCanonicalizer.DEFAULT;
+  private SeenUrlFilter seen;
+  private ToIntFunction<CrawlLink> priority = link -> 0;
+  private int minPriority = Integer.MIN_VALUE;
+
+  public Crawler(ArachnioClient client) {
+    this.client = requireNonNull(client);
+  }
+
+  /**
+   * The number of concurrent extract requests
+   */
+  public Crawler parallelism(int parallelism) {
+    if (parallelism < 1)
+      throw new IllegalArgumentException("parallelism must be positive");
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Links on pages at this depth are not followed. Zero crawls only the seeds.
+   */
+  public Crawler maxDepth(int maxDepth) {
+    if (maxDepth < 0)
+      throw new IllegalArgumentException("maxDepth must not be negative");
+    this.maxDepth = maxDepth;
+    return this;
+  }
+
+  /**
+   * The crawl stops after extracting this many links
+   */
+  public Crawler maxPages(long maxPages) {
+    if (maxPages < 1L)
+      throw new IllegalArgumentException("maxPages must be positive");
+    this.maxPages = maxPages;
+    return this;
+  }
+
+  /**
+   * The maximum number of links waiting to be extracted
+   */
+  public Crawler maxQueued(int maxQueued) {
+    if (maxQueued < 1)
+      throw new IllegalArgumentException("maxQueued must be positive");
+    this.maxQueued = maxQueued;
+    return this;
+  }
+
+  /**
+   * The maximum number of concurrent extract requests for links on one host
+   */
+  public Crawler maxPerHost(int maxPerHost) {
+    if (maxPerHost < 1)
+      throw new IllegalArgumentException("maxPerHost must be positive");
+    this.maxPerHost = maxPerHost;
+    return this;
+  }
+
+  public Crawler follow(Follow follow) {
+    this.follow = requireNonNull(follow);
+    return this;
+  }
+
+  public Crawler canonicalizer(UrlCanonicalizer canonicalizer) {
+    this.canonicalizer = requireNonNull(canonicalizer);
+    return this;
+  }
+
+  /**
+   * Skips links in the given filter, and adds each page to it once the page is extracted
+   * successfully, e.g., to skip pages an earlier crawl already visited. Links still queued when
+   * the crawl stops, and pages that failed, are not added, so the next crawl visits them. The
+   * caller owns the filter and must close it. By default, nothing is remembered between crawls.
+   */
+  public Crawler seen(SeenUrlFilter seen) {
+    this.seen = requireNonNull(seen);
+    return this;
+  }
+
+  /**
+   * Scores each discovered link. Higher scores are extracted first within a host. The default
+   * scores every link 0.
+   */
+  public Crawler priority(ToIntFunction<CrawlLink> priority) {
+    this.priority = requireNonNull(priority);
+    return this;
+  }
+
+  /**
+   * Discovered links that score below this are dropped. Seeds are never dropped.
+   */
+  public Crawler minPriority(int minPriority) {
+    this.minPriority = minPriority;
+    return this;
+  }
+
+  /**
+   * Crawls from the given seeds until the frontier is empty or the page limit is reached. The
+   * consumer receives every page from the worker threads, so it must be thread safe.
+   *
+   * @throws InterruptedIOException if interrupted while waiting for the crawl to finish
+   * @throws IOException if a filter could not be created or grown
+   */
+  public CrawlSummary crawl(List<String> seeds, Consumer<CrawlPage> consumer) throws IOException {
+    requireNonNull(consumer);
+
+    // Every link queued in this crawl, whether or not it has been extracted yet
+    Path temporary = Files.createTempFile("crawl", ".queued");
+    Files.delete(temporary);
+    SeenUrlFilter queued = SeenUrlFilter.open(temporary,
+        Math.min(Math.max(maxPages, 1024L), SeenUrlFilter.DEFAULT_INITIAL_CAPACITY),
+        QUEUED_FALSE_POSITIVE_RATE);
+
+    try {
+      Frontier frontier = new Frontier(queued, seen);
+      List<CrawlLink> links = new ArrayList<>(seeds.size());
+      for (String seed : seeds) {
+        CrawlLink link = link(seed, 0, null, null);
+        if (link != null)
+          links.add(link);
+      }
+      frontier.offer(links, true);
+
+      return run(frontier, consumer);
+    } finally {
+      try {
+        queued.close();
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+    }
+  }
+
+  private CrawlSummary run(Frontier frontier, Consumer<CrawlPage> consumer) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    try {
+      List<Future<?>> workers = new ArrayList<>(parallelism);
+      for (int i = 0; i < parallelism; i++)
+        workers.add(executor.submit(() -> work(frontier, consumer)));
+
+      for (Future<?> worker : workers) {
+        try {
+          worker.get();
+        } catch (ExecutionException e) {
+          frontier.stop();
+          Throwable cause = e.getCause();
+          if (cause instanceof UncheckedIOException)
+            throw ((UncheckedIOException) cause).getCause();
+          if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+          if (cause instanceof Error)
+            throw (Error) cause;
+          throw new IllegalStateException(cause);
+        }
+      }
+
+      return frontier.summary();
+    } catch (InterruptedException e) {
+      frontier.stop();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void work(Frontier frontier, Consumer<CrawlPage> consumer) {
+    for (Entry entry = frontier.take(); entry != null; entry = frontier.take()) {
+      CrawlLink link = entry.link;
+
+      ExtractedLink result = null;
+      RuntimeException error = null;
+      try {
+        result = client.extractLink(link.getUrl());
+      } catch (RuntimeException e) {
+        error = e;
+      }
+
+      List<CrawlLink> discovered = Collections.emptyList();
+      if (result != null && link.getDepth() < maxDepth)
+        discovered = discover(link, result);
+
+      try {
+        frontier.complete(entry, discovered, result != null);
+        consumer.accept(new CrawlPage(link, result, error));
+      } catch (IOException e) {
+        frontier.stop();
+        throw new UncheckedIOException(e);
+      } catch (RuntimeException | Error e) {
+        frontier.stop();
+        throw e;
+      }
+    }
+  }
+
+  private List<CrawlLink> discover(CrawlLink page, ExtractedLink result) {
+    // Only articles have body links
+    if (!(result.getEntity() instanceof ArticleWebpageEntityMetadata))
+      return Collections.emptyList();
+    List<Hyperlink> bodyLinks = ((ArticleWebpageEntityMetadata) result.getEntity()).getBodyLinks();
+    if (bodyLinks == null)
+      return Collections.emptyList();
+
+    List<CrawlLink> links = new ArrayList<>(bodyLinks.size());
+    for (Hyperlink hyperlink : bodyLinks) {
+      boolean outlink = Boolean.TRUE.equals(hyperlink.getOutlink());
+      if ((follow == Follow.OUTLINKS && !outlink)
+          || (follow == Follow.INTERNAL_LINKS && outlink))
+        continue;
+
+      if (hyperlink.getHref() == null || hyperlink.getHref().getLink() == null)
+        continue;
+
+      CrawlLink link = link(hyperlink.getHref().getLink(), page.getDepth() + 1, page.getUrl(),
+          hyperlink.getAnchorText());
+      if (link != null)
+        links.add(link);
+    }
+    return links;
+  }
+
+  /**
+   * @return the link for the given URL, or null if it is not an http or https URL
+   */
+  private CrawlLink link(String url, int depth, String referrer, String anchorText) {
+    String canonicalUrl = canonicalizer.canonicalize(url);
+
+    int authorityStart;
+    if (canonicalUrl.startsWith("https://"))
+      authorityStart = 8;
+    else if (canonicalUrl.startsWith("http://"))
+      authorityStart = 7;
+    else
+      return null;
+
+    int authorityEnd = authorityStart;
+    while (authorityEnd < canonicalUrl.length()
+        && "/?#".indexOf(canonicalUrl.charAt(authorityEnd)) == -1)
+      authorityEnd = authorityEnd + 1;
+    int at = canonicalUrl.lastIndexOf('@', authorityEnd - 1);
+    String host = canonicalUrl.substring(Math.max(at + 1, authorityStart), authorityEnd);
+    if (host.isEmpty())
+      return null;
+
+    return new CrawlLink(canonicalUrl, host, depth, referrer, anchorText);
+  }
+
+  private static final class Entry {
+    public final CrawlLink link;
+    public final int priority;
+    public final long sequence;
+    public final HostQueue host;
+
+    public Entry(CrawlLink link, int priority, long sequence, HostQueue host) {
+      this.link = link;
+      this.priority = priority;
+      this.sequence = sequence;
+      this.host = host;
+    }
+  }
+
+  private static final Comparator<Entry> ENTRY_ORDER =
+      Comparator.<Entry>comparingInt(e -> -e.priority).thenComparingLong(e -> e.sequence);
+
+  private static final class HostQueue {
+    public final String host;
+    public final PriorityQueue<Entry> pending = new PriorityQueue<>(ENTRY_ORDER);
+    public int running;
+    public boolean ready;
+
+    public HostQueue(String host) {
+      this.host = host;
+    }
+  }
+
+  /**
+   * The shared state of one crawl. Guarded by its lock.
+   */
+  private final class Frontier {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final SeenUrlFilter queuedUrls;
+
+    /**
+     * The caller's persistent filter, or null
+     */
+    private final SeenUrlFilter seenUrls;
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+
+    /**
+     * Hosts with pending links and room for another request, in turn order
+     */
+    private final ArrayDeque<HostQueue> ready = new ArrayDeque<>();
+
+    private long sequence;
+    private int queued;
+    private int running;
+    private long pages;
+    private long successes;
+    private long failures;
+    private long duplicates;
+    private long dropped;
+    private boolean stopped;
+
+    public Frontier(SeenUrlFilter queuedUrls, SeenUrlFilter seenUrls) {
+      this.queuedUrls = queuedUrls;
+      this.seenUrls = seenUrls;
+    }
+
+    /**
+     * @return the next link to extract, or null if the crawl is over
+     */
+    public Entry take() {
+      lock.lock();
+      try {
+        while (true) {
+          if (stopped || pages >= maxPages)
+            return null;
+
+          HostQueue host = ready.pollFirst();
+          if (host != null) {
+            host.ready = false;
+            Entry entry = host.pending.poll();
+            host.running = host.running + 1;
+            queued = queued - 1;
+            running = running + 1;
+            pages = pages + 1;
+            makeReady(host);
+            return entry;
+          }
+
+          if (running == 0)
+            return null;
+
+          changed.awaitUninterruptibly();
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public void complete(Entry entry, List<CrawlLink> discovered, boolean success)
+        throws IOException {
+      lock.lock();
+      try {
+        HostQueue host = entry.host;
+        host.running = host.running - 1;
+        running = running - 1;
+        if (success) {
+          successes = successes + 1;
+          if (seenUrls != null)
+            seenUrls.add(entry.link.getUrl());
+        } else {
+          failures = failures + 1;
+        }
+        offer(discovered, false);
+        makeReady(host);
+        if (host.running == 0 && host.pending.isEmpty())
+          hosts.remove(host.host);
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public void offer(List<CrawlLink> links, boolean seeds) throws IOException {
+      lock.lock();
+      try {
+        for (CrawlLink link : links) {
+          int score = priority.applyAsInt(link);
+          if (!seeds && score < minPriority) {
+            dropped = dropped + 1;
+            continue;
+          }
+          if (queuedUrls.mightContain(link.getUrl())
+              || (seenUrls != null && seenUrls.mightContain(link.getUrl()))) {
+            duplicates = duplicates + 1;
+            continue;
+          }
+          if (queued >= maxQueued) {
+            dropped = dropped + 1;
+            continue;
+          }
+
+          queuedUrls.add(link.getUrl());
+          HostQueue host = hosts.computeIfAbsent(link.getHost(), HostQueue::new);
+          host.pending.add(new Entry(link, score, sequence++, host));
+          queued = queued + 1;
+          makeReady(host);
+        }
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public void stop() {
+      lock.lock();
+      try {
+        stopped = true;
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    public CrawlSummary summary() {
+      lock.lock();
+      try {
+        return new CrawlSummary(pages, successes, failures, duplicates, dropped, queued);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void makeReady(HostQueue host) {
+      if (!host.ready && !host.pending.isEmpty() && host.running < maxPerHost) {
+        host.ready = true;
+        ready.addLast(host);
+      }
+    }
+  }
+}
@@ -0,0 +1,47 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.exception;
+
+import io.arachn.arachnio4j.ArachnioException;
+
+public class UnrecognizedStatusArachnioException extends ArachnioException {
+  private static final long serialVersionUID = -2254127384571293904L;
+
+  private final int statusCode;
+
+  public UnrecognizedStatusArachnioException(int statusCode) {
+    super("unrecognized failure " + statusCode);
+    this.statusCode = statusCode;
+  }
+
+  /**
+   * @return the HTTP status code the server responded with
+   */
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  /**
+   * @return true if the status code is in the 5xx range
+   */
+  public boolean isServerError() {
+    return statusCode >= 500 && statusCode <= 599;
+  }
+}
@@ -0,0 +1,221 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.nativeimage;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import org.graalvm.nativeimage.hosted.Feature;
+import org.graalvm.nativeimage.hosted.RuntimeReflection;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.KeyDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.arachn.arachnio4j.util.Jackson;
+
+/**
+ * Registers the model types for reflection when building a GraalVM native image, so that Jackson
+ * can bind them at runtime. Starting from {@link Jackson#MODEL_TYPES}, it registers every model
+ * type reachable through fields, public method signatures, supertypes, nested classes, and
+ * {@link JsonSubTypes} annotations. Walking the types at build time keeps the registration in
+ * sync with the model library without maintaining a class list by hand. The custom serializers,
+ * deserializers, and builders named in {@link JsonSerialize} and {@link JsonDeserialize}
+ * annotations on those types are registered, too.
+ * 
+ * <p>
+ * The native-image tool enables this feature automatically through the
+ * {@code META-INF/native-image} metadata bundled with this library.
+ */
+public final class ArachnioModelFeature implements Feature {
+  private static final String MODEL_PACKAGE_PREFIX = "io.arachn.spi.model.";
+
+  /**
+   * The subset of {@link RuntimeReflection} we use, so tests can see what we register outside of
+   * a native-image build
+   */
+  /* default */ static interface Registry {
+    public void register(Class<?> type);
+
+    public void registerForReflectiveInstantiation(Class<?> type);
+
+    public void register(Executable... executables);
+
+    public void register(Field... fields);
+  }
+
+  private static final Registry RUNTIME_REFLECTION = new Registry() {
+    @Override
+    public void register(Class<?> type) {
+      RuntimeReflection.register(type);
+    }
+
+    @Override
+    public void registerForReflectiveInstantiation(Class<?> type) {
+      RuntimeReflection.registerForReflectiveInstantiation(type);
+    }
+
+    @Override
+    public void register(Executable... executables) {
+      RuntimeReflection.register(executables);
+    }
+
+    @Override
+    public void register(Field... fields) {
+      RuntimeReflection.register(fields);
+    }
+  };
+
+  @Override
+  public String getDescription() {
+    return "Registers Arachnio model types for Jackson reflection";
+  }
+
+  @Override
+  public void beforeAnalysis(BeforeAnalysisAccess access) {
+    for (Class<?> type : modelTypes())
+      register(type, RUNTIME_REFLECTION);
+  }
+
+  /**
+   * @return every model type reachable from {@link Jackson#MODEL_TYPES}
+   */
+  /* default */ static Set<Class<?>> modelTypes() {
+    Set<Class<?>> result = new HashSet<>();
+    Deque<Class<?>> queue = new ArrayDeque<>(Jackson.MODEL_TYPES);
+    while (!queue.isEmpty()) {
+      Class<?> type = queue.removeFirst();
+      if (!result.add(type))
+        continue;
+
+      for (Field field : type.getDeclaredFields())
+        enqueue(queue, field.getGenericType());
+      for (Method method : type.getMethods()) {
+        enqueue(queue, method.getGenericReturnType());
+        for (Type parameterType : method.getGenericParameterTypes())
+          enqueue(queue, parameterType);
+      }
+      enqueue(queue, type.getGenericSuperclass());
+      for (Type interfaceType : type.getGenericInterfaces())
+        enqueue(queue, interfaceType);
+      for (Class<?> nestedType : type.getDeclaredClasses())
+        enqueue(queue, nestedType);
+
+      JsonSubTypes subtypes = type.getAnnotation(JsonSubTypes.class);
+      if (subtypes != null)
+        for (JsonSubTypes.Type subtype : subtypes.value())
+          enqueue(queue, subtype.value());
+    }
+    return result;
+  }
+
+  private static void enqueue(Deque<Class<?>> queue, Type type) {
+    if (type instanceof Class) {
+      Class<?> c = (Class<?>) type;
+      if (c.isArray())
+        enqueue(queue, c.getComponentType());
+      else if (c.getName().startsWith(MODEL_PACKAGE_PREFIX))
+        queue.addLast(c);
+    } else if (type instanceof ParameterizedType) {
+      ParameterizedType p = (ParameterizedType) type;
+      enqueue(queue, p.getRawType());
+      for (Type argument : p.getActualTypeArguments())
+        enqueue(queue, argument);
+    } else if (type instanceof GenericArrayType) {
+      enqueue(queue, ((GenericArrayType) type).getGenericComponentType());
+    } else if (type instanceof WildcardType) {
+      for (Type bound : ((WildcardType) type).getUpperBounds())
+        enqueue(queue, bound);
+    }
+  }
+
+  /* default */ static void register(Class<?> type, Registry registry) {
+    registerMembers(type, registry);
+
+    registerHelpers(type, registry);
+    for (Field field : type.getDeclaredFields())
+      registerHelpers(field, registry);
+    for (Method method : type.getDeclaredMethods())
+      registerHelpers(method, registry);
+  }
+
+  /**
+   * Registers the serializers, deserializers, and builders Jackson will instantiate for the given
+   * type or member
+   */
+  private static void registerHelpers(AnnotatedElement element, Registry registry) {
+    JsonSerialize serialize = element.getAnnotation(JsonSerialize.class);
+    if (serialize != null) {
+      registerHelper(serialize.using(), JsonSerializer.None.class, registry);
+      registerHelper(serialize.contentUsing(), JsonSerializer.None.class, registry);
+      registerHelper(serialize.keyUsing(), JsonSerializer.None.class, registry);
+      registerHelper(serialize.nullsUsing(), JsonSerializer.None.class, registry);
+    }
+
+    JsonDeserialize deserialize = element.getAnnotation(JsonDeserialize.class);
+    if (deserialize != null) {
+      registerHelper(deserialize.using(), JsonDeserializer.None.class, registry);
+      registerHelper(deserialize.contentUsing(), JsonDeserializer.None.class, registry);
+      registerHelper(deserialize.keyUsing(), KeyDeserializer.None.class, registry);
+      registerHelper(deserialize.builder(), Void.class, registry);
+    }
+  }
+
+  private static void registerHelper(Class<?> type, Class<?> none, Registry registry) {
+    if (type != none)
+      registerMembers(type, registry);
+  }
+
+  private static void registerMembers(Class<?> type, Registry registry) {
+    registry.register(type);
+    if (hasNullaryConstructor(type))
+      registry.registerForReflectiveInstantiation(type);
+    registry.register(type.getDeclaredConstructors());
+    registry.register(type.getDeclaredMethods());
+    registry.register(type.getDeclaredFields());
+  }
+
+  /**
+   * GraalVM refuses to register other types, like enums and builder-only types, for reflective
+   * instantiation
+   */
+  private static boolean hasNullaryConstructor(Class<?> type) {
+    if (type.isInterface() || type.isEnum() || type.isArray() || type.isPrimitive()
+        || Modifier.isAbstract(type.getModifiers()))
+      return false;
+    try {
+      type.getDeclaredConstructor();
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+}
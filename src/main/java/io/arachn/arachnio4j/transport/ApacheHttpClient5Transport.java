@@ -0,0 +1,145 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.transport;
+
+import static java.util.Objects.requireNonNull;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.io.CloseMode;
+
+/**
+ * A transport backed by the Apache HttpClient 5 async client and its own connection pool. The
+ * {@code org.apache.httpcomponents.client5:httpclient5} dependency is optional, so users of this
+ * class must add it themselves.
+ *
+ * <p>
+ * Unlike {@link JdkHttpClientTransport}, this transport lets you size the connection pool
+ * explicitly, which can help at high concurrency against a single host.
+ *
+ * <p>
+ * Also unlike {@link JdkHttpClientTransport}, this transport buffers each response body in memory
+ * before {@link #send(TransportRequest)} returns, so a request holds memory for its whole response
+ * at once. API responses are usually small, but callers that extract large pages at high
+ * concurrency should prefer the streaming JDK transport.
+ */
+public class ApacheHttpClient5Transport implements ArachnioTransport {
+  public static final int DEFAULT_MAX_CONNECTIONS = 64;
+
+  private static final String CONTENT_TYPE_HEADER_NAME = "Content-Type";
+
+  private final CloseableHttpAsyncClient client;
+
+  public ApacheHttpClient5Transport() {
+    this(DEFAULT_MAX_CONNECTIONS);
+  }
+
+  /**
+   * @param maxConnections the size of the connection pool. All requests go to one host, so this is
+   *        also the per-route limit.
+   */
+  public ApacheHttpClient5Transport(int maxConnections) {
+    this(HttpAsyncClients.custom()
+        .setConnectionManager(PoolingAsyncClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(maxConnections).setMaxConnPerRoute(maxConnections).build())
+        .build());
+  }
+
+  /**
+   * Starts the given client if necessary. Closing this transport closes the client.
+   */
+  public ApacheHttpClient5Transport(CloseableHttpAsyncClient client) {
+    this.client = requireNonNull(client);
+    this.client.start();
+  }
+
+  @Override
+  public TransportResponse send(TransportRequest request) throws IOException {
+    String contentType = request.getHeaders().get(CONTENT_TYPE_HEADER_NAME);
+
+    SimpleRequestBuilder builder = SimpleRequestBuilder.post(request.getUri());
+    for (Map.Entry<String, String> header : request.getHeaders().entrySet())
+      if (!header.getKey().equalsIgnoreCase(CONTENT_TYPE_HEADER_NAME))
+        builder.addHeader(header.getKey(), header.getValue());
+    builder.setBody(request.getBody(),
+        contentType != null ? ContentType.parse(contentType) : ContentType.APPLICATION_JSON);
+    SimpleHttpRequest httpRequest = builder.build();
+
+    SimpleHttpResponse response = await(List.of(client.execute(httpRequest, null))).get(0);
+
+    Header responseContentType = response.getFirstHeader(CONTENT_TYPE_HEADER_NAME);
+    byte[] body = response.getBodyBytes();
+    return new TransportResponse(response.getCode(),
+        responseContentType != null ? responseContentType.getValue() : null,
+        new ByteArrayInputStream(body != null ? body : new byte[0]));
+  }
+
+  /**
+   * Sends the {@code HEAD} requests concurrently, so the pool opens one connection per request.
+   */
+  @Override
+  public void warmUp(URI uri, int connections) throws IOException {
+    SimpleHttpRequest request = SimpleRequestBuilder.head(uri).build();
+
+    List<Future<SimpleHttpResponse>> futures = new ArrayList<>(connections);
+    for (int i = 0; i < connections; i++)
+      futures.add(client.execute(request, null));
+
+    await(futures);
+  }
+
+  private static List<SimpleHttpResponse> await(List<Future<SimpleHttpResponse>> futures)
+      throws IOException {
+    List<SimpleHttpResponse> result = new ArrayList<>(futures.size());
+    try {
+      for (Future<SimpleHttpResponse> future : futures)
+        result.add(future.get());
+    } catch (InterruptedException e) {
+      for (Future<SimpleHttpResponse> future : futures)
+        future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      throw new IOException(e.getCause());
+    }
+    return result;
+  }
+
+  @Override
+  public void close() throws IOException {
+    client.close(CloseMode.GRACEFUL);
+  }
+}
@@ -0,0 +1,58 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+
+/**
+ * The wire layer of the client. Implementations send one HTTP POST and return the status and body.
+ * They own their connection pooling, and must be safe to call from many threads at once.
+ *
+ * @see JdkHttpClientTransport
+ * @see ApacheHttpClient5Transport
+ */
+public interface ArachnioTransport extends Closeable {
+  /**
+   * @throws InterruptedIOException if interrupted while waiting for the response, in which case
+   *         the thread's interrupt flag is set
+   * @throws IOException if the request could not be sent or the response could not be read
+   */
+  public TransportResponse send(TransportRequest request) throws IOException;
+
+  /**
+   * Opens up to the given number of connections to the host of the given URI ahead of time, e.g.,
+   * by sending concurrent {@code HEAD} requests, so the first real requests skip the TCP and TLS
+   * handshakes. The response status does not matter. The default does nothing.
+   *
+   * @throws InterruptedIOException if interrupted while waiting, in which case the thread's
+   *         interrupt flag is set
+   * @throws IOException if the host could not be reached
+   */
+  default void warmUp(URI uri, int connections) throws IOException {}
+
+  /**
+   * Releases any connections and threads. The default does nothing.
+   */
+  @Override
+  default void close() throws IOException {}
+}
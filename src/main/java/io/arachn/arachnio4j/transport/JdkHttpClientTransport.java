@@ -0,0 +1,106 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.transport;
+
+import static java.util.Objects.requireNonNull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The default transport, backed by {@link java.net.http.HttpClient}. Response bodies are streamed
+ * rather than buffered.
+ */
+public class JdkHttpClientTransport implements ArachnioTransport {
+  private final HttpClient client;
+
+  public JdkHttpClientTransport() {
+    this(HttpClient.newHttpClient());
+  }
+
+  public JdkHttpClientTransport(HttpClient client) {
+    this.client = requireNonNull(client);
+  }
+
+  @Override
+  public TransportResponse send(TransportRequest request) throws IOException {
+    HttpRequest.Builder builder = HttpRequest.newBuilder(request.getUri())
+        .POST(BodyPublishers.ofByteArray(request.getBody()));
+    for (Map.Entry<String, String> header : request.getHeaders().entrySet())
+      builder.header(header.getKey(), header.getValue());
+
+    HttpResponse<InputStream> response;
+    try {
+      response = getClient().send(builder.build(), BodyHandlers.ofInputStream());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+
+    return new TransportResponse(response.statusCode(),
+        response.headers().firstValue("Content-Type").orElse(null), response.body());
+  }
+
+  /**
+   * Sends the {@code HEAD} requests concurrently, so that an HTTP/1.1 client opens one connection
+   * per request. An HTTP/2 client multiplexes them all over one connection.
+   */
+  @Override
+  public void warmUp(URI uri, int connections) throws IOException {
+    HttpRequest request =
+        HttpRequest.newBuilder(uri).method("HEAD", BodyPublishers.noBody()).build();
+
+    List<CompletableFuture<HttpResponse<Void>>> futures = new ArrayList<>(connections);
+    for (int i = 0; i < connections; i++)
+      futures.add(getClient().sendAsync(request, BodyHandlers.discarding()));
+
+    try {
+      for (CompletableFuture<HttpResponse<Void>> future : futures)
+        future.get();
+    } catch (InterruptedException e) {
+      for (CompletableFuture<HttpResponse<Void>> future : futures)
+        future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * @return the client
+   */
+  public HttpClient getClient() {
+    return client;
+  }
+}
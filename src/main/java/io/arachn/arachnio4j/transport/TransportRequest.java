@@ -0,0 +1,67 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.transport;
+
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Objects.requireNonNull;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An HTTP POST request. The body is already encoded.
+ */
+public final class TransportRequest {
+  private final URI uri;
+  private final Map<String, String> headers;
+  private final byte[] body;
+
+  public TransportRequest(URI uri, Map<String, String> headers, byte[] body) {
+    this.uri = requireNonNull(uri);
+    this.headers = unmodifiableMap(new LinkedHashMap<>(headers));
+    this.body = requireNonNull(body);
+  }
+
+  /**
+   * @return the uri
+   */
+  public URI getUri() {
+    return uri;
+  }
+
+  /**
+   * @return the headers, in insertion order
+   */
+  public Map<String, String> getHeaders() {
+    return headers;
+  }
+
+  /**
+   * @return the body. Callers must not modify it.
+   */
+  public byte[] getBody() {
+    return body;
+  }
+
+  @Override
+  public String toString() {
+    return "TransportRequest [uri=" + uri + ", length=" + body.length + "]";
+  }
+}
@@ -0,0 +1,70 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.transport;
+
+import static java.util.Objects.requireNonNull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * An HTTP response. The caller must close it to release the underlying connection.
+ */
+public final class TransportResponse implements Closeable {
+  private final int statusCode;
+  private final String contentType;
+  private final InputStream body;
+
+  /**
+   * @param contentType the value of the {@code Content-Type} header, or null if there was none
+   */
+  public TransportResponse(int statusCode, String contentType, InputStream body) {
+    this.statusCode = statusCode;
+    this.contentType = contentType;
+    this.body = requireNonNull(body);
+  }
+
+  /**
+   * @return the statusCode
+   */
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  /**
+   * @return the value of the {@code Content-Type} header, if any
+   */
+  public Optional<String> getContentType() {
+    return Optional.ofNullable(contentType);
+  }
+
+  /**
+   * @return the body
+   */
+  public InputStream getBody() {
+    return body;
+  }
+
+  @Override
+  public void close() throws IOException {
+    body.close();
+  }
+}
@@ -0,0 +1,63 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Converts model objects to and from the bytes sent over the wire. The client advertises
+ * {@link #getContentType()} in both the {@code Content-Type} and {@code Accept} headers.
+ *
+ * @see JacksonCodec
+ */
+public interface Codec {
+  /**
+   * @return the media type of the encoded bytes, e.g., {@code application/json}
+   */
+  public String getContentType();
+
+  public <T> byte[] serialize(T value);
+
+  public <T> T deserialize(Class<T> type, byte[] bytes);
+
+  /**
+   * Does any expensive one-time setup for the given types now, so the first real request doesn't
+   * pay for it. The default does nothing.
+   */
+  public default void warmUp(List<Class<?>> types) {}
+
+  /**
+   * Decodes a value directly from a stream. The default reads the whole stream and delegates to
+   * {@link #deserialize(Class, byte[])}. Implementations that can decode incrementally should
+   * override it. The caller closes the stream.
+   */
+  public default <T> T deserialize(Class<T> type, InputStream in) {
+    byte[] bytes;
+    try {
+      bytes = in.readAllBytes();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read value", e);
+    }
+    return deserialize(type, bytes);
+  }
+}
@@ -20,20 +20,61 @@
 package io.arachn.arachnio4j.util;
 
 import java.io.UncheckedIOException;
+import java.util.List;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.arachn.spi.model.DomainName;
+import io.arachn.spi.model.DomainNameBatch;
+import io.arachn.spi.model.ExtractedLink;
+import io.arachn.spi.model.Link;
+import io.arachn.spi.model.LinkBatch;
+import io.arachn.spi.model.ParsedDomainName;
+import io.arachn.spi.model.ParsedDomainNameBatch;
+import io.arachn.spi.model.ParsedLink;
+import io.arachn.spi.model.ParsedLinkBatch;
+import io.arachn.spi.model.UnwoundLink;
+import io.arachn.spi.model.UnwoundLinkBatch;
 import io.arachn.spi.model.serialization.ArachnioClientModule;
 
 public final class Jackson {
   private Jackson() {}
 
-  public static final ObjectMapper MAPPER =
-      new ObjectMapper().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
-          .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
-          .registerModule(new ArachnioClientModule()).registerModule(new JavaTimeModule());
+  /**
+   * The request and response types of the API. All other model types are reachable from these.
+   */
+  public static final List<Class<?>> MODEL_TYPES = List.of(DomainName.class,
+      DomainNameBatch.class, Link.class, LinkBatch.class, ParsedDomainName.class,
+      ParsedDomainNameBatch.class, ExtractedLink.class, ParsedLink.class, ParsedLinkBatch.class,
+      UnwoundLink.class, UnwoundLinkBatch.class);
+
+  public static final ObjectMapper MAPPER = newMapper(new JsonFactory());
+
+  /**
+   * Binary JSON. Same data model as {@link #MAPPER}, so any type that round-trips as JSON
+   * round-trips here, too.
+   */
+  public static final ObjectMapper SMILE_MAPPER = newMapper(new SmileFactory());
+
+  /**
+   * RFC 8949 CBOR. Same data model as {@link #MAPPER}.
+   */
+  public static final ObjectMapper CBOR_MAPPER = newMapper(new CBORFactory());
+
+  /**
+   * Returns a new mapper for the given data format with the configuration this library uses for
+   * all model types.
+   */
+  public static ObjectMapper newMapper(JsonFactory factory) {
+    return new ObjectMapper(factory).disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+        .registerModule(new ArachnioClientModule()).registerModule(new JavaTimeModule());
+  }
 
   public static <T> String serialize(T value) {
     try {
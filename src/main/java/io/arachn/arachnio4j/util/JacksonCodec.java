@@ -0,0 +1,136 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.util;
+
+import static java.util.Objects.requireNonNull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A {@link Codec} backed by one of the {@link Jackson} mappers. JSON is the default. Smile and
+ * CBOR skip text encoding entirely, which saves CPU and bytes on large batches, but they should
+ * only be used against a server or proxy that understands them.
+ */
+public final class JacksonCodec implements Codec {
+  public static final String JSON_CONTENT_TYPE = "application/json";
+
+  public static final String SMILE_CONTENT_TYPE = "application/x-jackson-smile";
+
+  public static final String CBOR_CONTENT_TYPE = "application/cbor";
+
+  public static final JacksonCodec JSON = new JacksonCodec(JSON_CONTENT_TYPE, Jackson.MAPPER);
+
+  public static final JacksonCodec SMILE =
+      new JacksonCodec(SMILE_CONTENT_TYPE, Jackson.SMILE_MAPPER);
+
+  public static final JacksonCodec CBOR = new JacksonCodec(CBOR_CONTENT_TYPE, Jackson.CBOR_MAPPER);
+
+  private static final List<JacksonCodec> KNOWN_CODECS = List.of(JSON, SMILE, CBOR);
+
+  /**
+   * Returns the codec for the given media type, if any. Parameters like {@code charset} are
+   * ignored.
+   */
+  public static Optional<Codec> forContentType(String contentType) {
+    if (contentType == null)
+      return Optional.empty();
+
+    String mediaType = contentType;
+    int semicolon = mediaType.indexOf(';');
+    if (semicolon != -1)
+      mediaType = mediaType.substring(0, semicolon);
+    mediaType = mediaType.strip().toLowerCase(Locale.ROOT);
+
+    for (JacksonCodec codec : KNOWN_CODECS)
+      if (codec.getContentType().equals(mediaType))
+        return Optional.of(codec);
+
+    return Optional.empty();
+  }
+
+  private final String contentType;
+  private final ObjectMapper mapper;
+
+  public JacksonCodec(String contentType, ObjectMapper mapper) {
+    this.contentType = requireNonNull(contentType);
+    this.mapper = requireNonNull(mapper);
+  }
+
+  @Override
+  public String getContentType() {
+    return contentType;
+  }
+
+  @Override
+  public <T> byte[] serialize(T value) {
+    try {
+      return getMapper().writeValueAsBytes(value);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to serialize value", e);
+    }
+  }
+
+  @Override
+  public <T> T deserialize(Class<T> type, byte[] bytes) {
+    try {
+      return getMapper().readValue(bytes, type);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to deserialize value", e);
+    }
+  }
+
+  @Override
+  public <T> T deserialize(Class<T> type, InputStream in) {
+    try {
+      return getMapper().readValue(in, type);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to deserialize value", e);
+    }
+  }
+
+  /**
+   * Builds and caches the mapper's serializers and deserializers for the given types, which
+   * otherwise happens on first use.
+   */
+  @Override
+  public void warmUp(List<Class<?>> types) {
+    for (Class<?> type : types) {
+      getMapper().writerFor(type);
+      getMapper().readerFor(type);
+    }
+  }
+
+  /**
+   * @return the mapper
+   */
+  public ObjectMapper getMapper() {
+    return mapper;
+  }
+
+  @Override
+  public String toString() {
+    return "JacksonCodec [contentType=" + contentType + "]";
+  }
+}
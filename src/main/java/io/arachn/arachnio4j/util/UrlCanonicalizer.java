@@ -0,0 +1,278 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.util;
+
+import static java.util.Objects.requireNonNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Rewrites http and https URLs into a canonical form so that trivially different variants of the
+ * same link map to the same key. Specifically:
+ * 
+ * <ul>
+ * <li>the scheme and host are lowercased, and a trailing dot on the host is removed</li>
+ * <li>default ports are removed, e.g., {@code :80} for http</li>
+ * <li>an empty path becomes {@code /}</li>
+ * <li>percent escapes are uppercased, e.g., {@code %2f} becomes {@code %2F}</li>
+ * <li>query parameters matching the stripped parameter rules are removed, and the remaining
+ * parameters are optionally sorted by name</li>
+ * <li>the fragment is optionally removed</li>
+ * </ul>
+ * 
+ * <p>
+ * Other URLs, and URLs this class cannot make sense of, are returned unchanged. The canonicalizer
+ * does not allocate a {@link java.net.URI}, and it tolerates the unescaped characters that are
+ * common in crawled links.
+ */
+public class UrlCanonicalizer {
+  /**
+   * Well-known tracking parameters that never change the content of a page
+   */
+  public static final Set<String> TRACKING_PARAMETER_NAMES =
+      Set.of("fbclid", "gclid", "dclid", "gbraid", "wbraid", "msclkid", "yclid", "twclid",
+          "igshid", "mc_cid", "mc_eid", "_hsenc", "_hsmi", "mkt_tok", "_ga", "_gl", "ref_src",
+          "pk_campaign", "pk_kwd", "pk_keyword", "pk_source", "pk_medium", "pk_content", "pk_cid");
+
+  /**
+   * Prefixes of well-known families of tracking parameters, e.g., {@code utm_source}. Matomo's
+   * older {@code pk_} parameters are listed by name instead, since sites also use that prefix for
+   * ordinary parameters like {@code pk_id}.
+   */
+  public static final List<String> TRACKING_PARAMETER_PREFIXES = List.of("utm_", "mtm_");
+
+  /**
+   * Strips the {@link #TRACKING_PARAMETER_NAMES tracking parameters} and
+   * {@link #TRACKING_PARAMETER_PREFIXES tracking parameter families}, sorts the query, and drops
+   * the fragment.
+   */
+  public static final UrlCanonicalizer DEFAULT = new UrlCanonicalizer(
+      parametersNamed(TRACKING_PARAMETER_NAMES).or(parametersPrefixed(TRACKING_PARAMETER_PREFIXES)),
+      true, true);
+
+  /**
+   * @return a rule that matches parameters with any of the given names, ignoring case
+   */
+  public static Predicate<String> parametersNamed(Set<String> names) {
+    final Set<String> lowercaseNames = new HashSet<>();
+    for (String name : names)
+      lowercaseNames.add(name.toLowerCase(Locale.ROOT));
+    return name -> lowercaseNames.contains(name.toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * @return a rule that matches parameters that start with any of the given prefixes, ignoring
+   *         case
+   */
+  public static Predicate<String> parametersPrefixed(List<String> prefixes) {
+    final String[] lowercasePrefixes = new String[prefixes.size()];
+    for (int i = 0; i < prefixes.size(); i++)
+      lowercasePrefixes[i] = prefixes.get(i).toLowerCase(Locale.ROOT);
+    return name -> {
+      for (String prefix : lowercasePrefixes)
+        if (name.regionMatches(true, 0, prefix, 0, prefix.length()))
+          return true;
+      return false;
+    };
+  }
+
+  private static final Comparator<String> PARAMETER_NAME_ORDER =
+      Comparator.comparing(UrlCanonicalizer::parameterName);
+
+  private final Predicate<String> strippedParameters;
+  private final boolean sortParameters;
+  private final boolean dropFragment;
+
+  /**
+   * @param strippedParameters Matches the names of query parameters to remove. Names are tested
+   *        as they appear in the URL, without decoding.
+   * @param sortParameters Whether to sort the remaining query parameters by name. Parameters with
+   *        the same name keep their relative order.
+   * @param dropFragment Whether to remove the fragment
+   */
+  public UrlCanonicalizer(Predicate<String> strippedParameters, boolean sortParameters,
+      boolean dropFragment) {
+    this.strippedParameters = requireNonNull(strippedParameters);
+    this.sortParameters = sortParameters;
+    this.dropFragment = dropFragment;
+  }
+
+  /**
+   * @return the canonical form of the given URL, or the URL itself if it is not an http or https
+   *         URL
+   */
+  public String canonicalize(String url) {
+    String s = url.strip();
+
+    int colon = s.indexOf(':');
+    if (colon == -1)
+      return url;
+    String scheme = s.substring(0, colon).toLowerCase(Locale.ROOT);
+    int defaultPort;
+    if (scheme.equals("http"))
+      defaultPort = 80;
+    else if (scheme.equals("https"))
+      defaultPort = 443;
+    else
+      return url;
+    if (!s.startsWith("//", colon + 1))
+      return url;
+
+    int authorityStart = colon + 3;
+    int authorityEnd = indexOfAny(s, "/?#", authorityStart);
+    int pathEnd = indexOfAny(s, "?#", authorityEnd);
+    int queryEnd = s.indexOf('#', pathEnd);
+    if (queryEnd == -1)
+      queryEnd = s.length();
+
+    StringBuilder result = new StringBuilder(s.length());
+    result.append(scheme).append("://");
+
+    if (!appendAuthority(result, s, authorityStart, authorityEnd, defaultPort))
+      return url;
+
+    if (pathEnd == authorityEnd)
+      result.append('/');
+    else
+      appendEscaped(result, s, authorityEnd, pathEnd);
+
+    if (pathEnd < queryEnd && s.charAt(pathEnd) == '?')
+      appendQuery(result, s, pathEnd + 1, queryEnd);
+
+    if (!dropFragment && queryEnd < s.length())
+      result.append(s, queryEnd, s.length());
+
+    return result.toString();
+  }
+
+  private static boolean appendAuthority(StringBuilder result, String s, int start, int end,
+      int defaultPort) {
+    int at = s.lastIndexOf('@', end - 1);
+    if (at >= start) {
+      result.append(s, start, at + 1);
+      start = at + 1;
+    }
+
+    // Don't mistake the colons in an IPv6 literal for a port separator
+    int hostEnd = end;
+    int portStart = -1;
+    int closeBracket = s.lastIndexOf(']', end - 1);
+    int portColon = s.lastIndexOf(':', end - 1);
+    if (portColon >= start && portColon > closeBracket) {
+      hostEnd = portColon;
+      portStart = portColon + 1;
+    }
+
+    if (hostEnd > start && s.charAt(hostEnd - 1) == '.')
+      hostEnd = hostEnd - 1;
+    if (hostEnd == start)
+      return false;
+    for (int i = start; i < hostEnd; i++) {
+      char ch = s.charAt(i);
+      result.append(ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch);
+    }
+
+    if (portStart != -1 && portStart < end) {
+      int port = 0;
+      for (int i = portStart; i < end; i++) {
+        char ch = s.charAt(i);
+        if (ch < '0' || ch > '9')
+          return false;
+        port = port * 10 + (ch - '0');
+        if (port > 65535)
+          return false;
+      }
+      if (port != defaultPort)
+        result.append(':').append(port);
+    }
+
+    return true;
+  }
+
+  private void appendQuery(StringBuilder result, String s, int start, int end) {
+    List<String> parameters = new ArrayList<>();
+    int i = start;
+    while (i <= end) {
+      int amp = s.indexOf('&', i);
+      if (amp == -1 || amp > end)
+        amp = end;
+      if (amp > i) {
+        String parameter = s.substring(i, amp);
+        if (!strippedParameters.test(parameterName(parameter)))
+          parameters.add(parameter);
+      }
+      i = amp + 1;
+    }
+
+    if (parameters.isEmpty())
+      return;
+
+    if (sortParameters && parameters.size() > 1) {
+      String[] sorted = parameters.toArray(new String[0]);
+      Arrays.sort(sorted, PARAMETER_NAME_ORDER);
+      parameters = Arrays.asList(sorted);
+    }
+
+    result.append('?');
+    for (int j = 0; j < parameters.size(); j++) {
+      if (j != 0)
+        result.append('&');
+      String parameter = parameters.get(j);
+      appendEscaped(result, parameter, 0, parameter.length());
+    }
+  }
+
+  /**
+   * Appends the given range, uppercasing the hex digits of percent escapes
+   */
+  private static void appendEscaped(StringBuilder result, String s, int start, int end) {
+    for (int i = start; i < end; i++) {
+      char ch = s.charAt(i);
+      result.append(ch);
+      if (ch == '%' && i + 2 < end && isHex(s.charAt(i + 1)) && isHex(s.charAt(i + 2))) {
+        result.append(Character.toUpperCase(s.charAt(i + 1)));
+        result.append(Character.toUpperCase(s.charAt(i + 2)));
+        i = i + 2;
+      }
+    }
+  }
+
+  private static String parameterName(String parameter) {
+    int equals = parameter.indexOf('=');
+    return equals == -1 ? parameter : parameter.substring(0, equals);
+  }
+
+  private static boolean isHex(char ch) {
+    return (ch >= '0' && ch <= '9') || (ch >= 'a' && ch <= 'f') || (ch >= 'A' && ch <= 'F');
+  }
+
+  private static int indexOfAny(String s, String chars, int from) {
+    for (int i = from; i < s.length(); i++)
+      if (chars.indexOf(s.charAt(i)) != -1)
+        return i;
+    return s.length();
+  }
+}
@@ -0,0 +1,396 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.bulk;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.arachn.arachnio4j.ArachnioClient;
+import io.arachn.arachnio4j.bulk.BulkLinkProcessor.Operation;
+import io.arachn.arachnio4j.client.DefaultArachnioClient;
+import io.arachn.arachnio4j.simulator.ArachnioSimulator;
+import io.arachn.arachnio4j.util.Jackson;
+import io.arachn.spi.model.ExtractedLink;
+import io.arachn.spi.model.Link;
+import io.arachn.spi.model.LinkBatch;
+import io.arachn.spi.model.UnwoundLinkBatch;
+
+public class BulkLinkProcessorTest {
+  public ArachnioSimulator simulator;
+  public ArachnioClient client;
+  public Path input;
+  public Path output;
+  public Path journal;
+
+  @Before
+  public void setupBulkLinkProcessorTest() throws IOException {
+    simulator = new ArachnioSimulator("key").start(4);
+    client = new DefaultArachnioClient(simulator.getBaseUrl(), simulator.getKey());
+    input = Files.createTempFile("input", ".ndjson");
+    output = Files.createTempFile("output", ".ndjson");
+    journal = Files.createTempFile("journal", ".bin");
+    Files.delete(journal);
+  }
+
+  @After
+  public void cleanupBulkLinkProcessorTest() throws IOException {
+    simulator.close();
+    Files.deleteIfExists(input);
+    Files.deleteIfExists(output);
+    Files.deleteIfExists(journal);
+  }
+
+  @Test
+  public void unwindTest() throws IOException {
+    Files.write(input, List.of("https://www.example.com/1", "",
+        "{\"id\":\"two\",\"url\":\"https://www.example.com/2\"}", "https://www.example.com/3",
+        "{\"nourl\":true}", "https://www.example.com/4", "https://www.example.com/5"),
+        StandardCharsets.UTF_8);
+
+    BulkSummary summary =
+        new BulkLinkProcessor(client, 2, 1).process(Operation.UNWIND, input, output);
+
+    assertThat(summary.getEntries(), is(6L));
+    assertThat(summary.getChunks(), is(3L));
+    assertThat(summary.getSuccesses(), is(5L));
+    assertThat(summary.getFailures(), is(1L));
+    assertThat(simulator.getRequestCount(), is(3L));
+
+    // Invalid lines are written as soon as they are read, so they may precede the results of
+    // lines that came before them in the input
+    List<JsonNode> lines = readOutput();
+    assertThat(lines.size(), is(6));
+    assertThat(lines.get(0).path("id").asText(), is("1"));
+    assertThat(lines.get(1).path("id").asText(), is("two"));
+    assertThat(lines.get(2).path("id").asText(), is("5"));
+    assertThat(lines.get(2).path("error").asText(), is("missing url"));
+    assertThat(lines.get(3).path("id").asText(), is("4"));
+  }
+
+  @Test
+  public void extractTest() throws IOException {
+    List<String> urls = new ArrayList<>();
+    for (int i = 1; i <= 25; i++)
+      urls.add("https://www.example.com/" + i);
+    Files.write(input, urls, StandardCharsets.UTF_8);
+
+    BulkSummary summary =
+        new BulkLinkProcessor(client, 10, 4).process(Operation.EXTRACT, input, output);
+
+    assertThat(summary.getSuccesses(), is(25L));
+    assertThat(summary.getFailures(), is(0L));
+
+    List<JsonNode> lines = readOutput();
+    for (int i = 0; i < lines.size(); i++) {
+      assertThat(lines.get(i).path("id").asText(), is(Integer.toString(i + 1)));
+      assertThat(lines.get(i).path("url").asText(), is(urls.get(i)));
+      assertThat(lines.get(i).path("result").path("link").path("unwound").path("link").asText(),
+          is(urls.get(i)));
+    }
+  }
+
+  @Test
+  public void extractRetryTest() throws IOException {
+    writeUrls(25);
+
+    // Every fifth link fails once, as if its connection were reset
+    Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+    ArachnioClient flaky = new DefaultArachnioClient(simulator.getBaseUrl(), simulator.getKey()) {
+      @Override
+      public ExtractedLink extractLink(Link link) {
+        int id = Integer.parseInt(link.getUrl().substring(link.getUrl().lastIndexOf('/') + 1));
+        if (id % 5 == 0
+            && calls.computeIfAbsent(link.getUrl(), u -> new AtomicInteger()).incrementAndGet() == 1)
+          throw new UncheckedIOException(new IOException("connection reset"));
+        return super.extractLink(link);
+      }
+    };
+
+    for (int parallelism : new int[] {1, 4}) {
+      calls.clear();
+      Files.deleteIfExists(journal);
+      BulkSummary summary = new BulkLinkProcessor(flaky, 10, parallelism)
+          .process(Operation.EXTRACT, input, output, journal);
+      assertThat(summary.getSuccesses(), is(25L));
+      assertThat(summary.getFailures(), is(0L));
+
+      List<JsonNode> lines = readOutput();
+      assertThat(lines.size(), is(25));
+      for (int i = 0; i < lines.size(); i++) {
+        assertThat(lines.get(i).path("id").asText(), is(Integer.toString(i + 1)));
+        assertThat(lines.get(i).has("result"), is(true));
+      }
+
+      // Every chunk was journaled as completed
+      long requests = simulator.getRequestCount();
+      new BulkLinkProcessor(flaky, 10, parallelism).process(Operation.EXTRACT, input, output,
+          journal);
+      assertThat(simulator.getRequestCount(), is(requests));
+    }
+  }
+
+  @Test
+  public void failedChunkTest() throws IOException {
+    simulator.error(500, 1.0);
+    Files.write(input, List.of("https://www.example.com/1", "https://www.example.com/2"),
+        StandardCharsets.UTF_8);
+
+    BulkSummary summary = new BulkLinkProcessor(client).process(Operation.PARSE, input, output);
+
+    assertThat(summary.getFailures(), is(2L));
+    assertThat(readOutput().get(1).path("url").asText(), is("https://www.example.com/2"));
+  }
+
+  @Test
+  public void resumeAfterFailureTest() throws IOException {
+    writeUrls(50);
+    BulkLinkProcessor processor = new BulkLinkProcessor(client, 10, 1, 2);
+
+    // Every chunk fails, and nothing is written
+    simulator.error(500, 1.0);
+    BulkSummary first = processor.process(Operation.UNWIND, input, output, journal);
+    assertThat(first.getFailures(), is(50L));
+    assertThat(Files.size(output), is(0L));
+
+    // Every chunk is retried
+    simulator.error(500, 0.0);
+    BulkSummary second = processor.process(Operation.UNWIND, input, output, journal);
+    assertThat(second.getSuccesses(), is(50L));
+    assertThat(second.getSkipped(), is(0L));
+    assertThat(readOutput().size(), is(50));
+
+    // Nothing is left to do
+    long requests = simulator.getRequestCount();
+    BulkSummary third = processor.process(Operation.UNWIND, input, output, journal);
+    assertThat(third.getEntries(), is(50L));
+    assertThat(third.getSkipped(), is(50L));
+    assertThat(third.getChunks(), is(0L));
+    assertThat(simulator.getRequestCount(), is(requests));
+    assertThat(readOutput().size(), is(50));
+  }
+
+  @Test
+  public void resumeAfterCrashTest() throws IOException {
+    writeUrls(45);
+    BulkLinkProcessor processor = new BulkLinkProcessor(client, 10, 1, 1);
+    processor.process(Operation.EXTRACT, input, output, journal);
+    long requests = simulator.getRequestCount();
+
+    // Lose the journal record of the last chunk, and leave a partial line in the output, as if
+    // we had crashed while the last chunk was in flight
+    byte[] contents = Files.readAllBytes(journal);
+    Files.write(journal, Arrays.copyOf(contents,
+        contents.length - ProgressJournal.RECORD_SIZE / 2));
+    Files.write(output, "{\"id\":".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+
+    BulkSummary summary = processor.process(Operation.EXTRACT, input, output, journal);
+    assertThat(summary.getChunks(), is(1L));
+    assertThat(summary.getSkipped(), is(40L));
+    assertThat(summary.getSuccesses(), is(5L));
+    assertThat(simulator.getRequestCount(), is(requests + 5L));
+
+    List<JsonNode> lines = readOutput();
+    assertThat(lines.size(), is(45));
+    for (int i = 0; i < lines.size(); i++)
+      assertThat(lines.get(i).path("id").asText(), is(Integer.toString(i + 1)));
+  }
+
+  @Test
+  public void seenTest() throws IOException {
+    Path filter = Files.createTempFile("seen", ".bin");
+    Files.delete(filter);
+    try {
+      Files.write(input,
+          List.of("https://www.example.com/1", "https://www.example.com/1?utm_source=feed",
+              "https://WWW.EXAMPLE.COM/2", "https://www.example.com/3"),
+          StandardCharsets.UTF_8);
+
+      // Duplicates are dropped within a run, even within a chunk
+      try (SeenUrlFilter seen = SeenUrlFilter.open(filter)) {
+        BulkSummary summary = new BulkLinkProcessor(client, 2, 1, 1, seen)
+            .process(Operation.UNWIND, input, output);
+        assertThat(summary.getSuccesses(), is(3L));
+        assertThat(summary.getSeen(), is(1L));
+        assertThat(readOutput().size(), is(3));
+      }
+
+      // Failed chunks are not seen
+      simulator.error(500, 1.0);
+      Files.write(input, List.of("https://www.example.com/4"), StandardOpenOption.APPEND);
+      try (SeenUrlFilter seen = SeenUrlFilter.open(filter)) {
+        BulkSummary summary = new BulkLinkProcessor(client, 2, 1, 1, seen)
+            .process(Operation.UNWIND, input, output, journal);
+        assertThat(summary.getSeen(), is(4L));
+        assertThat(summary.getFailures(), is(1L));
+      }
+
+      // Later runs skip everything that succeeded
+      simulator.error(500, 0.0);
+      long requests = simulator.getRequestCount();
+      try (SeenUrlFilter seen = SeenUrlFilter.open(filter)) {
+        BulkSummary summary = new BulkLinkProcessor(client, 2, 1, 1, seen)
+            .process(Operation.UNWIND, input, output);
+        assertThat(summary.getSeen(), is(4L));
+        assertThat(summary.getSuccesses(), is(1L));
+        assertThat(simulator.getRequestCount(), is(requests + 1L));
+      }
+    } finally {
+      Files.deleteIfExists(filter);
+    }
+  }
+
+  @Test
+  public void seenCrashTest() throws IOException {
+    Path filter = Files.createTempFile("seen", ".bin");
+    Files.delete(filter);
+    Map<Path, Path> snapshots = new LinkedHashMap<>();
+    try {
+      for (Path path : List.of(filter, output, journal))
+        snapshots.put(path, Files.createTempFile("snapshot", ".bin"));
+      writeUrls(4);
+
+      // The third chunk crashes after the first two were written, but before they were synced
+      try (SeenUrlFilter seen = SeenUrlFilter.open(filter)) {
+        new BulkLinkProcessor(crashingClient(3, snapshots), 1, 1, 100, seen)
+            .process(Operation.UNWIND, input, output, journal);
+        throw new AssertionError("expected crash");
+      } catch (Crash e) {
+        restore(snapshots);
+      }
+
+      // Resuming repeats the unsynced chunks, and the filter must not drop them
+      try (SeenUrlFilter seen = SeenUrlFilter.open(filter)) {
+        BulkSummary summary = new BulkLinkProcessor(client, 1, 1, 100, seen)
+            .process(Operation.UNWIND, input, output, journal);
+        assertThat(summary.getSeen(), is(0L));
+        assertThat(summary.getSuccesses(), is(4L));
+        assertThat(seen.mightContain("https://www.example.com/1"), is(true));
+      }
+
+      List<String> ids = new ArrayList<>();
+      for (JsonNode line : readOutput())
+        ids.add(line.path("id").asText());
+      assertThat(ids, is(List.of("1", "2", "3", "4")));
+    } finally {
+      Files.deleteIfExists(filter);
+      for (Path snapshot : snapshots.values())
+        Files.deleteIfExists(snapshot);
+    }
+  }
+
+  @Test
+  public void resumeAfterCrashWithLongSyncIntervalTest() throws IOException {
+    Map<Path, Path> snapshots = new LinkedHashMap<>();
+    try {
+      for (Path path : List.of(output, journal))
+        snapshots.put(path, Files.createTempFile("snapshot", ".bin"));
+      writeUrls(1200);
+
+      // Crash after more chunks than the journal buffers at once, with nothing synced yet
+      try {
+        new BulkLinkProcessor(crashingClient(1100, snapshots), 1, 1, 2000)
+            .process(Operation.UNWIND, input, output, journal);
+        throw new AssertionError("expected crash");
+      } catch (Crash e) {
+        restore(snapshots);
+      }
+
+      // The journal must not point past the end of the output
+      BulkSummary summary = new BulkLinkProcessor(client, 1, 1, 2000)
+          .process(Operation.UNWIND, input, output, journal);
+      assertThat(summary.getSuccesses(), is(1200L));
+
+      List<JsonNode> lines = readOutput();
+      assertThat(lines.size(), is(1200));
+      for (int i = 0; i < lines.size(); i++)
+        assertThat(lines.get(i).path("id").asText(), is(Integer.toString(i + 1)));
+    } finally {
+      for (Path snapshot : snapshots.values())
+        Files.deleteIfExists(snapshot);
+    }
+  }
+
+  /**
+   * Stands in for the process dying, with whatever was on disk at the time
+   */
+  private static final class Crash extends Error {
+    private static final long serialVersionUID = 1L;
+  }
+
+  /**
+   * @return a client whose given batch call copies each file to its snapshot, then crashes
+   */
+  private ArachnioClient crashingClient(int crashAt, Map<Path, Path> snapshots) {
+    AtomicInteger batches = new AtomicInteger();
+    return new DefaultArachnioClient(simulator.getBaseUrl(), simulator.getKey()) {
+      @Override
+      public UnwoundLinkBatch unwindLinkBatch(LinkBatch linkBatch) {
+        if (batches.incrementAndGet() == crashAt) {
+          try {
+            for (Map.Entry<Path, Path> snapshot : snapshots.entrySet())
+              Files.copy(snapshot.getKey(), snapshot.getValue(),
+                  StandardCopyOption.REPLACE_EXISTING);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          throw new Crash();
+        }
+        return super.unwindLinkBatch(linkBatch);
+      }
+    };
+  }
+
+  private static void restore(Map<Path, Path> snapshots) throws IOException {
+    for (Map.Entry<Path, Path> snapshot : snapshots.entrySet())
+      Files.copy(snapshot.getValue(), snapshot.getKey(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private void writeUrls(int count) throws IOException {
+    List<String> urls = new ArrayList<>();
+    for (int i = 1; i <= count; i++)
+      urls.add("https://www.example.com/" + i);
+    Files.write(input, urls, StandardCharsets.UTF_8);
+  }
+
+  private List<JsonNode> readOutput() throws IOException {
+    List<JsonNode> result = new ArrayList<>();
+    for (String line : Files.readAllLines(output, StandardCharsets.UTF_8))
+      result.add(Jackson.MAPPER.readTree(line));
+    return result;
+  }
+}
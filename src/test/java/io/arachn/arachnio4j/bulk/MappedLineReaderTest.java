@@ -0,0 +1,100 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.bulk;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedLineReaderTest {
+  public Path file;
+
+  @Before
+  public void setupMappedLineReaderTest() throws IOException {
+    file = Files.createTempFile("lines", ".txt");
+  }
+
+  @After
+  public void cleanupMappedLineReaderTest() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  public void emptyFileTest() throws IOException {
+    assertThat(readAll(1024), is(List.of()));
+  }
+
+  @Test
+  public void linesTest() throws IOException {
+    Files.write(file, "alpha\nbeta\r\n\ngamma".getBytes(StandardCharsets.UTF_8));
+    assertThat(readAll(1024), is(List.of("alpha", "beta", "", "gamma")));
+  }
+
+  @Test
+  public void slidingWindowTest() throws IOException {
+    // Lines straddle window boundaries, and some are longer than the window
+    StringBuilder contents = new StringBuilder();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      String line = "line-" + i + "-" + "x".repeat(i % 23) + "-\u00e9\u8718";
+      contents.append(line).append('\n');
+      expected.add(line);
+    }
+    Files.write(file, contents.toString().getBytes(StandardCharsets.UTF_8));
+
+    assertThat(readAll(7), is(expected));
+    assertThat(readAll(64), is(expected));
+  }
+
+  @Test
+  public void positionAndSeekTest() throws IOException {
+    Files.write(file, "alpha\nbeta\ngamma\n".getBytes(StandardCharsets.UTF_8));
+    try (MappedLineReader reader = new MappedLineReader(file, 4)) {
+      assertThat(reader.readLine(), is("alpha"));
+      long position = reader.getPosition();
+      assertThat(position, is(6L));
+      assertThat(reader.readLine(), is("beta"));
+      assertThat(reader.readLine(), is("gamma"));
+      assertThat(reader.readLine(), is((String) null));
+      assertThat(reader.getLineNumber(), is(3L));
+
+      reader.seek(position, 1L);
+      assertThat(reader.readLine(), is("beta"));
+      assertThat(reader.getLineNumber(), is(2L));
+    }
+  }
+
+  private List<String> readAll(int windowSize) throws IOException {
+    List<String> result = new ArrayList<>();
+    try (MappedLineReader reader = new MappedLineReader(file, windowSize)) {
+      for (String line = reader.readLine(); line != null; line = reader.readLine())
+        result.add(line);
+    }
+    return result;
+  }
+}
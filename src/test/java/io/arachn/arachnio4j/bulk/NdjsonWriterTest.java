@@ -0,0 +1,73 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.bulk;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.junit.Test;
+import io.arachn.arachnio4j.util.Jackson;
+
+public class NdjsonWriterTest {
+  @Test
+  public void linesTest() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (NdjsonWriter writer = new NdjsonWriter(out)) {
+      writer.write(Map.of("id", "1"));
+      writer.write(Jackson.MAPPER.readTree("{\"id\":\"2\"}"));
+      writer.write("three");
+    }
+
+    assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8),
+        is("{\"id\":\"1\"}\n{\"id\":\"2\"}\n\"three\"\n"));
+  }
+
+  @Test
+  public void positionTest() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (NdjsonWriter writer = new NdjsonWriter(out, 100L)) {
+      writer.write(Map.of("id", "1"));
+      assertThat(writer.getPosition(), is(111L));
+      writer.write(Map.of("id", "2"));
+      assertThat(writer.getPosition(), is(122L));
+    }
+  }
+
+  @Test
+  public void closeTest() throws IOException {
+    boolean[] closed = new boolean[1];
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    FilterOutputStream out = new FilterOutputStream(bytes) {
+      @Override
+      public void close() throws IOException {
+        closed[0] = true;
+        super.close();
+      }
+    };
+
+    new NdjsonWriter(out).close();
+
+    assertThat(closed[0], is(false));
+  }
+}
@@ -0,0 +1,117 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.bulk;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProgressJournalTest {
+  public Path file;
+
+  @Before
+  public void setupProgressJournalTest() throws IOException {
+    file = Files.createTempFile("journal", ".bin");
+    Files.delete(file);
+  }
+
+  @After
+  public void cleanupProgressJournalTest() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  public void replayTest() throws IOException {
+    try (ProgressJournal journal = ProgressJournal.open(file, 10, 1)) {
+      assertThat(journal.getState().getPrefixChunks(), is(0L));
+      journal.completed(0, 10, 0, 100, 10, 0, 1000);
+      journal.completed(1, 10, 100, 200, 20, 1000, 2000);
+      journal.failed(2, 10, 200, 300, 30);
+      journal.completed(3, 5, 300, 350, 36, 2000, 2500);
+    }
+
+    try (ProgressJournal journal = ProgressJournal.open(file, 10, 1)) {
+      ProgressJournal.State state = journal.getState();
+      assertThat(state.getPrefixChunks(), is(2L));
+      assertThat(state.getPrefixInputEnd(), is(200L));
+      assertThat(state.getPrefixLineEnd(), is(20L));
+      assertThat(state.getOutputEnd(), is(2500L));
+      assertThat(state.getCompletedEntries(), is(25L));
+      assertThat(state.isCompleted(2), is(false));
+      assertThat(state.isCompleted(3), is(true));
+
+      // The retry succeeds
+      journal.completed(2, 10, 200, 300, 30, 2500, 3500);
+    }
+
+    try (ProgressJournal journal = ProgressJournal.open(file, 10, 1)) {
+      ProgressJournal.State state = journal.getState();
+      assertThat(state.getPrefixChunks(), is(4L));
+      assertThat(state.getPrefixInputEnd(), is(350L));
+      assertThat(state.getOutputEnd(), is(3500L));
+      assertThat(state.getCompletedEntries(), is(35L));
+    }
+  }
+
+  @Test
+  public void tornRecordTest() throws IOException {
+    try (ProgressJournal journal = ProgressJournal.open(file, 10, 1)) {
+      journal.completed(0, 10, 0, 100, 10, 0, 1000);
+      journal.completed(1, 10, 100, 200, 20, 1000, 2000);
+    }
+
+    // Simulate a crash in the middle of writing the last record
+    long size = Files.size(file);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(size - ProgressJournal.RECORD_SIZE / 2);
+    }
+
+    try (ProgressJournal journal = ProgressJournal.open(file, 10, 1)) {
+      assertThat(journal.getState().getPrefixChunks(), is(1L));
+      assertThat(journal.getState().getOutputEnd(), is(1000L));
+    }
+
+    // The torn record was discarded, so the file is whole records again
+    assertThat(Files.size(file), is(size - ProgressJournal.RECORD_SIZE));
+
+    // Corrupt the last record's checksum
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), Files.size(file) - 1);
+    }
+
+    try (ProgressJournal journal = ProgressJournal.open(file, 10, 1)) {
+      assertThat(journal.getState().getPrefixChunks(), is(0L));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void mismatchedJobTest() throws IOException {
+    ProgressJournal.open(file, 10, 1).close();
+    ProgressJournal.open(file, 20, 1).close();
+  }
+}
@@ -0,0 +1,153 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.bulk;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SeenUrlFilterTest {
+  public Path file;
+
+  @Before
+  public void setupSeenUrlFilterTest() throws IOException {
+    file = Files.createTempFile("seen", ".bin");
+    Files.delete(file);
+  }
+
+  @After
+  public void cleanupSeenUrlFilterTest() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  public void hashTest() {
+    long[] hash = SeenUrlFilter.hash("The quick brown fox jumps over the lazy dog");
+    assertThat(hash[0], is(0xe34bbc7bbc071b6cL));
+    assertThat(hash[1], is(0x7a433ca9c49a9347L));
+
+    hash = SeenUrlFilter.hash("");
+    assertThat(hash[0], is(0L));
+    assertThat(hash[1], is(0L));
+  }
+
+  @Test
+  public void persistenceTest() throws IOException {
+    try (SeenUrlFilter filter = SeenUrlFilter.open(file, 1000, 0.01)) {
+      assertThat(filter.add("https://www.example.com/a"), is(true));
+      assertThat(filter.add("https://www.example.com/a"), is(false));
+      assertThat(filter.mightContain("https://www.example.com/a"), is(true));
+    }
+
+    // The parameters of an existing filter win
+    try (SeenUrlFilter filter = SeenUrlFilter.open(file, 5, 0.5)) {
+      assertThat(filter.getInitialCapacity(), is(1000L));
+      assertThat(filter.getFalsePositiveRate(), is(0.01));
+      assertThat(filter.getCount(), is(1L));
+      assertThat(filter.mightContain("https://www.example.com/a"), is(true));
+    }
+  }
+
+  @Test
+  public void layerCapacityTest() {
+    // Layers double while they fit, which is through layer 5 here
+    double rate = 0.01 / 2.0;
+    long previous = 0L;
+    for (int index = 0; index < 64; index++) {
+      long capacity = SeenUrlFilter.layerCapacity(1000L, index, rate, 1L << 20);
+      assertThat(SeenUrlFilter.bitsFor(capacity, rate) <= 1L << 20, is(true));
+      if (index <= 5) {
+        assertThat(capacity, is(1000L << index));
+      } else if (index == 6) {
+        // Then every layer gets as much as fits at its own rate
+        assertThat(capacity < 1000L << index, is(true));
+      } else {
+        // Which keeps shrinking as the rate halves
+        assertThat(capacity > 0L && capacity < previous, is(true));
+      }
+      previous = capacity;
+      rate = rate / 2.0;
+    }
+
+    // Doubling would overflow
+    long capacity =
+        SeenUrlFilter.layerCapacity(Long.MAX_VALUE / 2L, 2, 0.001, SeenUrlFilter.MAX_LAYER_BITS);
+    assertThat(SeenUrlFilter.bitsFor(capacity, 0.001) <= SeenUrlFilter.MAX_LAYER_BITS, is(true));
+
+    // No room at all
+    assertThat(SeenUrlFilter.layerCapacity(1000L, 0, 0.0, 1L << 20), is(0L));
+  }
+
+  @Test
+  public void scalingTest() throws IOException {
+    final int n = 20000;
+    final double rate = 0.01;
+    try (SeenUrlFilter filter = SeenUrlFilter.open(file, 1000, rate)) {
+      for (int i = 0; i < n; i++)
+        filter.add("https://www.example.com/articles/" + i);
+      assertThat(filter.getLayerCount() > 1, is(true));
+    }
+
+    try (SeenUrlFilter filter = SeenUrlFilter.open(file)) {
+      for (int i = 0; i < n; i++)
+        assertThat(filter.mightContain("https://www.example.com/articles/" + i), is(true));
+
+      int falsePositives = 0;
+      for (int i = n; i < 2 * n; i++)
+        if (filter.mightContain("https://www.example.com/articles/" + i))
+          falsePositives = falsePositives + 1;
+      assertThat(falsePositives < n * rate, is(true));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void wrongFileTest() throws IOException {
+    Files.write(file, new byte[128]);
+    SeenUrlFilter.open(file).close();
+  }
+
+  @Test
+  public void shortFileTest() throws IOException {
+    Files.write(file, "https://www.example.com/\n".getBytes(StandardCharsets.UTF_8));
+    try {
+      SeenUrlFilter.open(file).close();
+      throw new AssertionError("expected IOException");
+    } catch (IOException e) {
+      assertThat(e.getMessage(), is("not a seen URL filter"));
+    }
+
+    // The file was left alone
+    assertThat(Files.size(file), is(25L));
+  }
+
+  @Test
+  public void emptyFileTest() throws IOException {
+    Files.createFile(file);
+    try (SeenUrlFilter filter = SeenUrlFilter.open(file)) {
+      assertThat(filter.add("https://www.example.com/a"), is(true));
+    }
+  }
+}
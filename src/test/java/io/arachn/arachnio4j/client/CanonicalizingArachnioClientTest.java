@@ -0,0 +1,195 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.client;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.arachn.arachnio4j.simulator.ArachnioSimulator;
+import io.arachn.arachnio4j.simulator.LatencyDistribution;
+import io.arachn.arachnio4j.util.Jackson;
+import io.arachn.arachnio4j.util.UrlCanonicalizer;
+import io.arachn.spi.model.ExtractedLink;
+import io.arachn.spi.model.LinkBatch;
+import io.arachn.spi.model.LinkBatchEntry;
+import io.arachn.spi.model.UnwoundLink;
+import io.arachn.spi.model.UnwoundLinkBatch;
+
+public class CanonicalizingArachnioClientTest {
+  public ArachnioSimulator simulator;
+  public CanonicalizingArachnioClient client;
+
+  @Before
+  public void setupCanonicalizingArachnioClientTest() throws Exception {
+    simulator = new ArachnioSimulator("key").start(8);
+    client = new CanonicalizingArachnioClient(
+        new DefaultArachnioClient(simulator.getBaseUrl(), simulator.getKey()));
+  }
+
+  @After
+  public void cleanupCanonicalizingArachnioClientTest() {
+    simulator.close();
+  }
+
+  @Test
+  public void cacheTest() {
+    UnwoundLink first = client.unwindLink("https://www.example.com/a?utm_source=x");
+    UnwoundLink second = client.unwindLink("HTTPS://WWW.EXAMPLE.COM:443/a#comments");
+
+    // Each caller sees its own URL, but the same unwound link
+    assertThat(first.getOriginal().getLink(), is("https://www.example.com/a?utm_source=x"));
+    assertThat(second.getOriginal().getLink(), is("HTTPS://WWW.EXAMPLE.COM:443/a#comments"));
+    assertThat(second.getUnwound(), is(first.getUnwound()));
+    assertThat(simulator.getResponseCount(200), is(1L));
+    assertThat(client.getLinks(), is(2L));
+    assertThat(client.getDeduplicatedLinks(), is(1L));
+
+    // Different operations don't share results
+    ExtractedLink extracted = client.extractLink("https://www.example.com/a?fbclid=y");
+    assertThat(simulator.getResponseCount(200), is(2L));
+    assertThat(extracted.getLink().getOriginal().getLink(),
+        is("https://www.example.com/a?fbclid=y"));
+  }
+
+  @Test
+  public void copyTest() {
+    UnwoundLink first = client.unwindLink("https://www.example.com/a");
+    first.getUnwound().setLink("https://www.example.com/changed");
+
+    UnwoundLink second = client.unwindLink("https://www.example.com/a");
+    assertThat(second.getUnwound().getLink(), is("https://www.example.com/a"));
+    assertThat(simulator.getResponseCount(200), is(1L));
+  }
+
+  @Test
+  public void extractCacheTest() {
+    // Extract results are too big to cache by default
+    client.extractLink("https://www.example.com/a");
+    client.extractLink("https://www.example.com/a?utm_source=x");
+    assertThat(simulator.getResponseCount(200), is(2L));
+    assertThat(client.getDeduplicatedLinks(), is(0L));
+
+    client = new CanonicalizingArachnioClient(
+        new DefaultArachnioClient(simulator.getBaseUrl(), simulator.getKey()),
+        UrlCanonicalizer.DEFAULT, 0, 10);
+    client.extractLink("https://www.example.com/a");
+    ExtractedLink second = client.extractLink("https://www.example.com/a?utm_source=x");
+    assertThat(simulator.getResponseCount(200), is(3L));
+    assertThat(client.getDeduplicatedLinks(), is(1L));
+    assertThat(second.getLink().getOriginal().getLink(),
+        is("https://www.example.com/a?utm_source=x"));
+  }
+
+  @Test
+  public void concurrentTest() throws Exception {
+    simulator.latency(LatencyDistribution.constant(Duration.ofMillis(200)));
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<UnwoundLink>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        final String url = "https://www.example.com/b?utm_campaign=" + i;
+        futures.add(executor.submit(() -> client.unwindLink(url)));
+      }
+      for (Future<UnwoundLink> future : futures)
+        future.get();
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(simulator.getResponseCount(200), is(1L));
+    assertThat(client.getDeduplicatedLinks(), is(7L));
+  }
+
+  @Test
+  public void batchTest() {
+    client.unwindLink("https://www.example.com/cached");
+
+    List<LinkBatchEntry> entries = List.of(
+        new LinkBatchEntry().id("a").url("https://www.example.com/x?utm_source=1"),
+        new LinkBatchEntry().id("b").url("https://www.example.com/cached?fbclid=2"),
+        new LinkBatchEntry().id("c").url("https://WWW.EXAMPLE.COM/x"),
+        new LinkBatchEntry().id("d").url("https://www.example.com/y"));
+
+    JsonNode response = Jackson.MAPPER.valueToTree(client.unwindLinkBatch(entries));
+    List<String> ids = new ArrayList<>();
+    response.path("entries").forEach(e -> ids.add(e.path("id").asText()));
+
+    // The single unwind doesn't share cache entries with batches, so only c is deduplicated
+    assertThat(ids, is(List.of("a", "b", "c", "d")));
+    assertThat(client.getDeduplicatedLinks(), is(1L));
+    assertThat(response.path("entries").get(0).path("result").path("unwound"),
+        is(response.path("entries").get(2).path("result").path("unwound")));
+    assertThat(response.path("entries").get(0).path("result").path("original").path("link")
+        .asText(), is("https://www.example.com/x?utm_source=1"));
+    assertThat(response.path("entries").get(2).path("result").path("original").path("link")
+        .asText(), is("https://WWW.EXAMPLE.COM/x"));
+
+    // A second batch is answered entirely from the cache
+    client.unwindLinkBatch(entries.stream()
+        .map(e -> new LinkBatchEntry().id(e.getId() + "2").url(e.getUrl())).collect(toList()));
+    assertThat(simulator.getResponseCount(200), is(2L));
+    assertThat(client.getDeduplicatedLinks(), is(5L));
+  }
+
+  @Test
+  public void batchFailureTest() {
+    AtomicInteger batches = new AtomicInteger();
+    client = new CanonicalizingArachnioClient(
+        new DefaultArachnioClient(simulator.getBaseUrl(), simulator.getKey()) {
+          @Override
+          public UnwoundLinkBatch unwindLinkBatch(LinkBatch linkBatch) {
+            if (batches.incrementAndGet() > 1)
+              return super.unwindLinkBatch(linkBatch);
+
+            // The first batch fails for every entry
+            ObjectNode root = Jackson.MAPPER.createObjectNode();
+            ArrayNode entries = root.putArray("entries");
+            for (LinkBatchEntry entry : linkBatch.getEntries())
+              entries.addObject().put("id", entry.getId()).put("error", "unavailable");
+            return Jackson.MAPPER.convertValue(root, UnwoundLinkBatch.class);
+          }
+        });
+
+    List<LinkBatchEntry> entries =
+        List.of(new LinkBatchEntry().id("a").url("https://www.example.com/x"));
+    JsonNode failed = Jackson.MAPPER.valueToTree(client.unwindLinkBatch(entries));
+    assertThat(failed.path("entries").get(0).path("result").isObject(), is(false));
+
+    // The failure was not cached
+    JsonNode succeeded = Jackson.MAPPER.valueToTree(client.unwindLinkBatch(entries));
+    assertThat(batches.get(), is(2));
+    assertThat(succeeded.path("entries").get(0).path("result").path("original").path("link")
+        .asText(), is("https://www.example.com/x"));
+  }
+}
@@ -35,6 +35,7 @@ import org.junit.Before;
 import org.junit.Test;
 import io.arachn.arachnio4j.ArachnioClient;
 import io.arachn.arachnio4j.util.Jackson;
+import io.arachn.arachnio4j.util.JacksonCodec;
 import io.arachn.spi.model.ArticleWebpageEntityMetadata;
 import io.arachn.spi.model.Authority;
 import io.arachn.spi.model.DomainName;
@@ -52,6 +53,7 @@ import io.arachn.spi.model.UnwoundLink;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
 
 public class DefaultArachnioClientTest {
   public MockWebServer server;
@@ -91,6 +93,75 @@ public class DefaultArachnioClientTest {
         is(new DomainName().hostname("www.google.com")));
   }
 
+  @Test
+  public void parseDomainSmileTest() throws Exception {
+    ParsedDomainName expected = new ParsedDomainName().registrySuffix("com")
+        .publicSuffix("google.com").hostname("www.google.com");
+
+    server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK)
+        .setHeader("Content-Type", JacksonCodec.SMILE_CONTENT_TYPE)
+        .setBody(new Buffer().write(JacksonCodec.SMILE.serialize(expected))));
+
+    server.start();
+
+    ArachnioClient client = new DefaultArachnioClient(
+        format("http://%s:%d/v1", server.getHostName(), server.getPort()), key,
+        JacksonCodec.SMILE);
+
+    ParsedDomainName response = client.parseDomainName("www.google.com");
+
+    assertThat(response, is(expected));
+
+    RecordedRequest request = server.takeRequest();
+
+    assertThat(request.getHeader(DefaultArachnioClient.CONTENT_TYPE_HEADER_NAME),
+        is(JacksonCodec.SMILE_CONTENT_TYPE));
+    assertThat(request.getHeader(DefaultArachnioClient.ACCEPT_HEADER_NAME),
+        is("application/x-jackson-smile, application/json;q=0.5"));
+    assertThat(JacksonCodec.SMILE.deserialize(DomainName.class, request.getBody().readByteArray()),
+        is(new DomainName().hostname("www.google.com")));
+  }
+
+  @Test
+  public void parseDomainSmileFallbackToJsonTest() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK)
+        .setHeader("Content-Type", "application/json").setBody(
+            "{\"registrySuffix\":\"com\",\"publicSuffix\":\"google.com\",\"hostname\":\"www.google.com\"}"));
+
+    server.start();
+
+    ArachnioClient client = new DefaultArachnioClient(
+        format("http://%s:%d/v1", server.getHostName(), server.getPort()), key,
+        JacksonCodec.SMILE);
+
+    ParsedDomainName response = client.parseDomainName("www.google.com");
+
+    assertThat(response, is(new ParsedDomainName().registrySuffix("com")
+        .publicSuffix("google.com").hostname("www.google.com")));
+  }
+
+  @Test
+  public void schedulerLaneTest() throws Exception {
+    String json =
+        "{\"registrySuffix\":\"com\",\"publicSuffix\":\"google.com\",\"hostname\":\"www.google.com\"}";
+    server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK).setBody(json));
+    server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK).setBody(json));
+
+    server.start();
+
+    DefaultArachnioClient client = new DefaultArachnioClient(
+        DefaultArachnioClient.defaultClient(),
+        format("http://%s:%d/v1", server.getHostName(), server.getPort()), key,
+        JacksonCodec.JSON, new RequestScheduler(4));
+
+    client.parseDomainName("www.google.com");
+    client.withPriority(RequestPriority.BULK).parseDomainName("www.google.com");
+
+    assertThat(client.getScheduler().getLaneStats(RequestPriority.INTERACTIVE).getRequests(),
+        is(1L));
+    assertThat(client.getScheduler().getLaneStats(RequestPriority.BULK).getRequests(), is(1L));
+  }
+
   @Test
   public void parseLinkTest() throws Exception {
     server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK).setBody(
@@ -0,0 +1,225 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.client;
+
+import static java.lang.String.format;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.arachn.arachnio4j.client.LoadBalancingArachnioClient.Endpoint;
+import io.arachn.arachnio4j.client.LoadBalancingArachnioClient.EndpointStats;
+import io.arachn.arachnio4j.client.LoadBalancingArachnioClient.Strategy;
+import io.arachn.arachnio4j.exception.InternalErrorArachnioException;
+import io.arachn.spi.model.ParsedDomainName;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+
+public class LoadBalancingArachnioClientTest {
+  private static final String PARSED_DOMAIN_JSON =
+      "{\"registrySuffix\":\"com\",\"publicSuffix\":\"google.com\",\"hostname\":\"www.google.com\"}";
+
+  public MockWebServer server1;
+  public MockWebServer server2;
+
+  @Before
+  public void setupLoadBalancingArachnioClientTest() throws IOException {
+    server1 = new MockWebServer();
+    server2 = new MockWebServer();
+    server1.start();
+    server2.start();
+  }
+
+  @After
+  public void cleanupLoadBalancingArachnioClientTest() throws IOException {
+    server1.shutdown();
+    server2.shutdown();
+  }
+
+  @Test
+  public void weightedRoundRobinTest() throws Exception {
+    for (int i = 0; i < 6; i++) {
+      server1.enqueue(ok());
+      server2.enqueue(ok());
+    }
+
+    LoadBalancingArachnioClient client = newClient(Strategy.WEIGHTED_ROUND_ROBIN,
+        List.of(endpoint(server1, "key1", 2), endpoint(server2, "key2", 1)));
+
+    for (int i = 0; i < 6; i++)
+      assertThat(client.parseDomainName("www.google.com").getHostname(), is("www.google.com"));
+
+    assertThat(server1.getRequestCount(), is(4));
+    assertThat(server2.getRequestCount(), is(2));
+    assertThat(server1.takeRequest().getHeader(DefaultArachnioClient.BLOBR_API_KEY_HEADER_NAME),
+        is("key1"));
+    assertThat(server2.takeRequest().getHeader(DefaultArachnioClient.BLOBR_API_KEY_HEADER_NAME),
+        is("key2"));
+  }
+
+  @Test
+  public void forbiddenEjectsAndRetriesTest() throws Exception {
+    server1.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_FORBIDDEN));
+    server2.enqueue(ok());
+    server2.enqueue(ok());
+
+    LoadBalancingArachnioClient client = newClient(Strategy.WEIGHTED_ROUND_ROBIN,
+        List.of(endpoint(server1, "key1", 1), endpoint(server2, "key2", 1)));
+
+    assertThat(client.parseDomainName("www.google.com"), is(expected()));
+    assertThat(client.parseDomainName("www.google.com"), is(expected()));
+
+    assertThat(server1.getRequestCount(), is(1));
+    assertThat(server2.getRequestCount(), is(2));
+
+    List<EndpointStats> stats = client.getEndpointStats();
+    assertThat(stats.get(0).isEjected(), is(true));
+    assertThat(stats.get(0).getEjections(), is(1L));
+    assertThat(stats.get(0).getFailures(), is(1L));
+    assertThat(stats.get(1).isEjected(), is(false));
+    assertThat(stats.get(1).getSuccesses(), is(2L));
+    assertThat(stats.get(1).getOutstanding(), is(0));
+  }
+
+  @Test
+  public void repeatedServerErrorsEjectTest() throws Exception {
+    server1.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_INTERNAL_ERROR));
+    server1.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_UNAVAILABLE));
+
+    // Only one endpoint, so failures are not retried anywhere
+    LoadBalancingArachnioClient client = new LoadBalancingArachnioClient(
+        DefaultArachnioClient.defaultClient(), List.of(endpoint(server1, "key1", 1)),
+        Strategy.LEAST_OUTSTANDING_REQUESTS, 2, Duration.ofMinutes(1));
+
+    try {
+      client.parseDomainName("www.google.com");
+      throw new AssertionError("expected failure");
+    } catch (UncheckedIOException e) {
+      assertThat(e.getCause() instanceof InternalErrorArachnioException, is(true));
+    }
+    assertThat(client.getEndpointStats().get(0).isEjected(), is(false));
+
+    try {
+      client.parseDomainName("www.google.com");
+      throw new AssertionError("expected failure");
+    } catch (UncheckedIOException e) {
+      // expected
+    }
+    assertThat(client.getEndpointStats().get(0).isEjected(), is(true));
+  }
+
+  @Test
+  public void leastOutstandingRequestsTest() throws Exception {
+    // The first request is slow, and pins endpoint 1 while the rest are sent
+    server1.enqueue(ok().setHeadersDelay(1, TimeUnit.SECONDS));
+    for (int i = 0; i < 3; i++)
+      server2.enqueue(ok());
+
+    LoadBalancingArachnioClient client = newClient(Strategy.LEAST_OUTSTANDING_REQUESTS,
+        List.of(endpoint(server1, "key1", 1), endpoint(server2, "key2", 1)));
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<ParsedDomainName> slow =
+          executor.submit(() -> client.parseDomainName("www.google.com"));
+      server1.takeRequest();
+      assertThat(client.getEndpointStats().get(0).getOutstanding(), is(1));
+
+      for (int i = 0; i < 3; i++)
+        assertThat(client.parseDomainName("www.google.com"), is(expected()));
+      assertThat(server2.getRequestCount(), is(3));
+
+      assertThat(slow.get(), is(expected()));
+      assertThat(server1.getRequestCount(), is(1));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void transportErrorRetriesTest() throws Exception {
+    server1.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+    server2.enqueue(ok());
+
+    LoadBalancingArachnioClient client = newClient(Strategy.WEIGHTED_ROUND_ROBIN,
+        List.of(endpoint(server1, "key1", 1), endpoint(server2, "key2", 1)));
+
+    assertThat(client.parseDomainName("www.google.com"), is(expected()));
+    assertThat(client.getEndpointStats().get(0).getFailures(), is(1L));
+    assertThat(client.getEndpointStats().get(1).getSuccesses(), is(1L));
+  }
+
+  @Test
+  public void decodingErrorDoesNotEjectTest() throws Exception {
+    server1.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK)
+        .setHeader("Content-Type", "application/json").setBody("{\"registrySuffix\":"));
+
+    // Even one endpoint failure would eject
+    LoadBalancingArachnioClient client = new LoadBalancingArachnioClient(
+        DefaultArachnioClient.defaultClient(),
+        List.of(endpoint(server1, "key1", 1), endpoint(server2, "key2", 1)),
+        Strategy.WEIGHTED_ROUND_ROBIN, 1, Duration.ofMinutes(1));
+
+    try {
+      client.parseDomainName("www.google.com");
+      throw new AssertionError("expected failure");
+    } catch (UncheckedIOException e) {
+      assertThat(e.getCause() instanceof JsonProcessingException, is(true));
+    }
+
+    // Not retried elsewhere, and not held against the endpoint
+    assertThat(server2.getRequestCount(), is(0));
+    assertThat(client.getEndpointStats().get(0).getFailures(), is(1L));
+    assertThat(client.getEndpointStats().get(0).isEjected(), is(false));
+  }
+
+  private static LoadBalancingArachnioClient newClient(Strategy strategy,
+      List<Endpoint> endpoints) {
+    return new LoadBalancingArachnioClient(DefaultArachnioClient.defaultClient(), endpoints,
+        strategy, LoadBalancingArachnioClient.DEFAULT_FAILURE_THRESHOLD, Duration.ofMinutes(1));
+  }
+
+  private static Endpoint endpoint(MockWebServer server, String key, int weight) {
+    return new Endpoint(format("http://%s:%d/v1", server.getHostName(), server.getPort()), key,
+        weight);
+  }
+
+  private static MockResponse ok() {
+    return new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK)
+        .setBody(PARSED_DOMAIN_JSON);
+  }
+
+  private static ParsedDomainName expected() {
+    return new ParsedDomainName().registrySuffix("com").publicSuffix("google.com")
+        .hostname("www.google.com");
+  }
+}
@@ -0,0 +1,163 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.client;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+public class RequestSchedulerTest {
+  @Test
+  public void interactiveJumpsBulkQueueTest() throws Exception {
+    RequestScheduler scheduler = new RequestScheduler(1);
+    List<RequestPriority> order = Collections.synchronizedList(new ArrayList<>());
+
+    // Hold the only slot until everyone is queued
+    CountDownLatch release = new CountDownLatch(1);
+    Thread blocker = start(scheduler, RequestPriority.BULK, order, release);
+    await(scheduler, RequestPriority.BULK, 0, 1);
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 50; i++)
+      threads.add(start(scheduler, RequestPriority.BULK, order, null));
+    await(scheduler, RequestPriority.BULK, 50, 1);
+
+    threads.add(start(scheduler, RequestPriority.INTERACTIVE, order, null));
+    await(scheduler, RequestPriority.INTERACTIVE, 1, 0);
+
+    release.countDown();
+    blocker.join();
+    for (Thread thread : threads)
+      thread.join();
+
+    assertThat(order.size(), is(52));
+    assertThat(order.get(0), is(RequestPriority.BULK));
+    assertThat(order.get(1), is(RequestPriority.INTERACTIVE));
+
+    RequestScheduler.LaneStats bulk = scheduler.getLaneStats(RequestPriority.BULK);
+    assertThat(bulk.getRequests(), is(51L));
+    assertThat(bulk.getQueueDepth(), is(0));
+    assertThat(bulk.getRunning(), is(0));
+    assertThat(bulk.getMaxWait().compareTo(bulk.getMeanWait()) >= 0, is(true));
+    assertThat(scheduler.getLaneStats(RequestPriority.INTERACTIVE).getRequests(), is(1L));
+  }
+
+  @Test
+  public void weightedShareTest() throws Exception {
+    Map<RequestPriority, Integer> weights = new EnumMap<>(RequestPriority.class);
+    weights.put(RequestPriority.INTERACTIVE, 3);
+    weights.put(RequestPriority.BULK, 1);
+    RequestScheduler scheduler = new RequestScheduler(1, weights);
+    List<RequestPriority> order = Collections.synchronizedList(new ArrayList<>());
+
+    CountDownLatch release = new CountDownLatch(1);
+    Thread blocker = start(scheduler, RequestPriority.BULK, order, release);
+    await(scheduler, RequestPriority.BULK, 0, 1);
+
+    // Queue bulk and interactive requests alternately, so both lanes are backlogged
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      threads.add(start(scheduler, RequestPriority.BULK, order, null));
+      await(scheduler, RequestPriority.BULK, i + 1, 1);
+      threads.add(start(scheduler, RequestPriority.INTERACTIVE, order, null));
+      await(scheduler, RequestPriority.INTERACTIVE, i + 1, 0);
+    }
+
+    release.countDown();
+    blocker.join();
+    for (Thread thread : threads)
+      thread.join();
+
+    // The blocker took the bulk start tag 0, so queued bulk requests have start tags 1, 2, 3, ...
+    // and interactive requests have 0, 1/3, 2/3, 1, .... Ties go to the interactive lane.
+    RequestPriority b = RequestPriority.BULK;
+    RequestPriority i = RequestPriority.INTERACTIVE;
+    assertThat(order.subList(0, 12), is(List.of(b, i, i, i, i, b, i, i, i, b, i, b)));
+  }
+
+  @Test
+  public void unboundedNeverQueuesTest() {
+    RequestScheduler scheduler = RequestScheduler.unbounded();
+    assertThat(scheduler.execute(RequestPriority.BULK,
+        () -> scheduler.execute(RequestPriority.INTERACTIVE, () -> "nested")), is("nested"));
+  }
+
+  @Test
+  public void unboundedStatsTest() throws Exception {
+    RequestScheduler scheduler = RequestScheduler.unbounded();
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      Thread thread = new Thread(() -> {
+        for (int j = 0; j < 1000; j++)
+          scheduler.execute(RequestPriority.BULK, () -> null);
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads)
+      thread.join();
+
+    RequestScheduler.LaneStats running = scheduler.execute(RequestPriority.INTERACTIVE,
+        () -> scheduler.getLaneStats(RequestPriority.INTERACTIVE));
+    assertThat(running.getRunning(), is(1));
+    assertThat(running.getRequests(), is(1L));
+
+    RequestScheduler.LaneStats bulk = scheduler.getLaneStats(RequestPriority.BULK);
+    assertThat(bulk.getRequests(), is(8000L));
+    assertThat(bulk.getRunning(), is(0));
+    assertThat(bulk.getQueueDepth(), is(0));
+    assertThat(bulk.getMaxWait().isZero(), is(true));
+  }
+
+  private static Thread start(RequestScheduler scheduler, RequestPriority priority,
+      List<RequestPriority> order, CountDownLatch release) {
+    Thread thread = new Thread(() -> scheduler.execute(priority, () -> {
+      order.add(priority);
+      if (release != null) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return null;
+    }));
+    thread.start();
+    return thread;
+  }
+
+  private static void await(RequestScheduler scheduler, RequestPriority priority, int queueDepth,
+      int running) throws InterruptedException {
+    for (int i = 0; i < 5000; i++) {
+      RequestScheduler.LaneStats stats = scheduler.getLaneStats(priority);
+      if (stats.getQueueDepth() == queueDepth && stats.getRunning() == running)
+        return;
+      Thread.sleep(1L);
+    }
+    throw new AssertionError("timed out waiting for " + priority);
+  }
+}
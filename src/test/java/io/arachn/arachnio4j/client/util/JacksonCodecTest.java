@@ -0,0 +1,71 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.client.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import java.util.Optional;
+import org.junit.Test;
+import io.arachn.arachnio4j.util.Codec;
+import io.arachn.arachnio4j.util.JacksonCodec;
+import io.arachn.spi.model.ParsedDomainName;
+
+public class JacksonCodecTest {
+  private static final ParsedDomainName VALUE = new ParsedDomainName().registrySuffix("com")
+      .publicSuffix("google.com").hostname("www.google.com");
+
+  @Test
+  public void jsonRoundTripTest() {
+    assertThat(roundTrip(JacksonCodec.JSON), is(VALUE));
+  }
+
+  @Test
+  public void smileRoundTripTest() {
+    assertThat(roundTrip(JacksonCodec.SMILE), is(VALUE));
+  }
+
+  @Test
+  public void cborRoundTripTest() {
+    assertThat(roundTrip(JacksonCodec.CBOR), is(VALUE));
+  }
+
+  @Test
+  public void binaryCodecsAreSmallerTest() {
+    int json = JacksonCodec.JSON.serialize(VALUE).length;
+    assertThat(JacksonCodec.SMILE.serialize(VALUE).length < json, is(true));
+    assertThat(JacksonCodec.CBOR.serialize(VALUE).length < json, is(true));
+  }
+
+  @Test
+  public void forContentTypeTest() {
+    assertThat(JacksonCodec.forContentType("application/json; charset=utf-8"),
+        is(Optional.<Codec>of(JacksonCodec.JSON)));
+    assertThat(JacksonCodec.forContentType("Application/X-Jackson-Smile"),
+        is(Optional.<Codec>of(JacksonCodec.SMILE)));
+    assertThat(JacksonCodec.forContentType("application/cbor"),
+        is(Optional.<Codec>of(JacksonCodec.CBOR)));
+    assertThat(JacksonCodec.forContentType("text/html"), is(Optional.<Codec>empty()));
+    assertThat(JacksonCodec.forContentType(null), is(Optional.<Codec>empty()));
+  }
+
+  private static ParsedDomainName roundTrip(Codec codec) {
+    return codec.deserialize(ParsedDomainName.class, codec.serialize(VALUE));
+  }
+}
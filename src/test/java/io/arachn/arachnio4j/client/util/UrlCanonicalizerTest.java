@@ -0,0 +1,92 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.client.util;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import java.util.Set;
+import org.junit.Test;
+import io.arachn.arachnio4j.util.UrlCanonicalizer;
+
+public class UrlCanonicalizerTest {
+  private static final UrlCanonicalizer CANONICALIZER = UrlCanonicalizer.DEFAULT;
+
+  @Test
+  public void trackingParametersTest() {
+    assertThat(
+        CANONICALIZER.canonicalize(
+            "https://www.example.com/a?utm_source=feed&id=7&fbclid=abc&UTM_Medium=rss"),
+        is("https://www.example.com/a?id=7"));
+    assertThat(CANONICALIZER.canonicalize("https://www.example.com/a?utm_source=feed&fbclid=abc"),
+        is("https://www.example.com/a"));
+
+    // Only Matomo's own pk_ parameters are tracking parameters
+    assertThat(
+        CANONICALIZER.canonicalize("https://www.example.com/a?pk_campaign=x&pk_id=7&pk_kwd=y"),
+        is("https://www.example.com/a?pk_id=7"));
+  }
+
+  @Test
+  public void hostAndPortTest() {
+    assertThat(CANONICALIZER.canonicalize("HTTPS://WWW.Example.COM:443/Path"),
+        is("https://www.example.com/Path"));
+    assertThat(CANONICALIZER.canonicalize("http://www.example.com.:80"),
+        is("http://www.example.com/"));
+    assertThat(CANONICALIZER.canonicalize("http://www.example.com:8080/"),
+        is("http://www.example.com:8080/"));
+    assertThat(CANONICALIZER.canonicalize("http://User@[::1]:80/"), is("http://User@[::1]/"));
+    assertThat(CANONICALIZER.canonicalize("http://[::1]/"), is("http://[::1]/"));
+  }
+
+  @Test
+  public void portRangeTest() {
+    assertThat(CANONICALIZER.canonicalize("HTTP://X.COM:65535"), is("http://x.com:65535/"));
+    assertThat(CANONICALIZER.canonicalize("HTTP://X.COM:65536"), is("HTTP://X.COM:65536"));
+    assertThat(CANONICALIZER.canonicalize("HTTP://X.COM:99999/"), is("HTTP://X.COM:99999/"));
+    assertThat(CANONICALIZER.canonicalize("HTTP://X.COM:0000080/"), is("http://x.com/"));
+  }
+
+  @Test
+  public void queryOrderTest() {
+    assertThat(CANONICALIZER.canonicalize("https://example.com/?b=2&a=1&&b=1&c"),
+        is("https://example.com/?a=1&b=2&b=1&c"));
+  }
+
+  @Test
+  public void escapeAndFragmentTest() {
+    assertThat(CANONICALIZER.canonicalize("https://example.com/a%2fb?q=%e2%82%ac#section"),
+        is("https://example.com/a%2Fb?q=%E2%82%AC"));
+
+    UrlCanonicalizer keepFragment =
+        new UrlCanonicalizer(UrlCanonicalizer.parametersNamed(Set.of("ref")), false, false);
+    assertThat(keepFragment.canonicalize("https://example.com/?b=2&ref=x&a=1#top"),
+        is("https://example.com/?b=2&a=1#top"));
+  }
+
+  @Test
+  public void unchangedTest() {
+    assertThat(CANONICALIZER.canonicalize("mailto:someone@example.com"),
+        is("mailto:someone@example.com"));
+    assertThat(CANONICALIZER.canonicalize("/relative/path"), is("/relative/path"));
+    assertThat(CANONICALIZER.canonicalize("http://example.com:http/"),
+        is("http://example.com:http/"));
+    assertThat(CANONICALIZER.canonicalize("https:///path"), is("https:///path"));
+  }
+}
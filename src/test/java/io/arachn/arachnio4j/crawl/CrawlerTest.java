@@ -0,0 +1,273 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.crawl;
+
+import static java.util.stream.Collectors.toSet;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import io.arachn.arachnio4j.ArachnioClient;
+import io.arachn.arachnio4j.bulk.SeenUrlFilter;
+import io.arachn.arachnio4j.client.DefaultArachnioClient;
+import io.arachn.arachnio4j.simulator.ArachnioSimulator;
+import io.arachn.arachnio4j.simulator.LatencyDistribution;
+import io.arachn.spi.model.ExtractedLink;
+import io.arachn.spi.model.Link;
+
+public class CrawlerTest {
+  public ArachnioSimulator simulator;
+  public ArachnioClient client;
+  public Path seen;
+
+  @Before
+  public void setupCrawlerTest() throws IOException {
+    simulator = new ArachnioSimulator("key").start(4);
+    client = new DefaultArachnioClient(simulator.getBaseUrl(), simulator.getKey());
+    seen = Files.createTempFile("seen", ".bin");
+    Files.delete(seen);
+  }
+
+  @After
+  public void cleanupCrawlerTest() throws IOException {
+    simulator.close();
+    Files.deleteIfExists(seen);
+  }
+
+  @Test
+  public void depthTest() throws IOException {
+    List<CrawlPage> pages = new CopyOnWriteArrayList<>();
+
+    CrawlSummary summary =
+        new Crawler(client).maxDepth(2).crawl(List.of("https://www.example.com/a"), pages::add);
+
+    // 1 seed, 3 links at depth 1, and 9 links at depth 2
+    assertThat(summary.getPages(), is(13L));
+    assertThat(summary.getSuccesses(), is(13L));
+    assertThat(summary.getFailures(), is(0L));
+    assertThat(summary.getRemaining(), is(0L));
+    assertThat(pages.size(), is(13));
+    assertThat(pages.stream().filter(p -> p.getLink().getDepth() == 2).count(), is(9L));
+    assertThat(pages.stream().map(p -> p.getLink().getUrl()).collect(toSet()).size(), is(13));
+
+    CrawlLink link = pages.stream().filter(p -> p.getLink().getUrl().equals(
+        "https://www.example.com/a/2/1")).findFirst().get().getLink();
+    assertThat(link.getHost(), is("www.example.com"));
+    assertThat(link.getReferrer(), is("https://www.example.com/a/2"));
+    assertThat(link.getAnchorText(), is("Link 1"));
+  }
+
+  @Test
+  public void duplicateTest() throws IOException {
+    List<CrawlPage> pages = new CopyOnWriteArrayList<>();
+
+    CrawlSummary summary = new Crawler(client).maxDepth(1).crawl(List.of(
+        "https://www.example.com/a", "HTTPS://WWW.EXAMPLE.COM:443/a?utm_source=x",
+        "https://www.example.com/a/1", "mailto:alpha@example.com"), pages::add);
+
+    // The second seed canonicalizes to the first, and /a/1 is both a seed and a link from /a, so
+    // we crawl /a, its 3 links, and the 3 links from /a/1
+    assertThat(summary.getPages(), is(7L));
+    assertThat(summary.getDuplicates(), is(2L));
+    assertThat(pages.stream().map(p -> p.getLink().getUrl()).collect(toSet()).size(), is(7));
+  }
+
+  @Test
+  public void seenTest() throws IOException {
+    try (SeenUrlFilter filter = SeenUrlFilter.open(seen)) {
+      filter.add("https://www.example.com/a/1");
+
+      CrawlSummary summary = new Crawler(client).maxDepth(1).seen(filter)
+          .crawl(List.of("https://www.example.com/a"), page -> {
+          });
+
+      assertThat(summary.getPages(), is(3L));
+      assertThat(summary.getDuplicates(), is(1L));
+      assertThat(filter.mightContain("https://www.example.com/a/2"), is(true));
+    }
+  }
+
+  @Test
+  public void seenResumeTest() throws IOException {
+    try (SeenUrlFilter filter = SeenUrlFilter.open(seen)) {
+      // Stop with links still queued
+      CrawlSummary first = new Crawler(client).parallelism(1).maxDepth(1).maxPages(2L)
+          .seen(filter).crawl(List.of("https://www.example.com/a"), page -> {
+          });
+      assertThat(first.getPages(), is(2L));
+      assertThat(first.getRemaining(), is(2L));
+      assertThat(filter.getCount(), is(2L));
+
+      // The next crawl visits only what the first did not
+      Set<String> urls = ConcurrentHashMap.newKeySet();
+      CrawlSummary second = new Crawler(client).maxDepth(0).seen(filter).crawl(
+          List.of("https://www.example.com/a", "https://www.example.com/a/2",
+              "https://www.example.com/a/3"),
+          page -> urls.add(page.getLink().getUrl()));
+      assertThat(second.getDuplicates(), is(1L));
+      assertThat(urls, is(Set.of("https://www.example.com/a/2", "https://www.example.com/a/3")));
+    }
+  }
+
+  @Test
+  public void seenFailureTest() throws IOException {
+    try (SeenUrlFilter filter = SeenUrlFilter.open(seen)) {
+      simulator.error(500, 1.0);
+      CrawlSummary failed = new Crawler(client).seen(filter)
+          .crawl(List.of("https://www.example.com/a"), page -> {
+          });
+      assertThat(failed.getFailures(), is(1L));
+      assertThat(filter.mightContain("https://www.example.com/a"), is(false));
+
+      // Failed pages are retried by the next crawl
+      simulator.error(500, 0.0);
+      CrawlSummary retried = new Crawler(client).maxDepth(0).seen(filter)
+          .crawl(List.of("https://www.example.com/a"), page -> {
+          });
+      assertThat(retried.getSuccesses(), is(1L));
+      assertThat(filter.mightContain("https://www.example.com/a"), is(true));
+    }
+  }
+
+  @Test
+  public void maxPagesTest() throws IOException {
+    CrawlSummary summary = new Crawler(client).maxDepth(5).maxPages(10L)
+        .crawl(List.of("https://www.example.com/a"), page -> {
+        });
+
+    assertThat(summary.getPages(), is(10L));
+    assertThat(summary.getRemaining() > 0L, is(true));
+  }
+
+  @Test
+  public void maxQueuedTest() throws IOException {
+    CrawlSummary summary = new Crawler(client).parallelism(1).maxDepth(2).maxQueued(2)
+        .crawl(List.of("https://www.example.com/a"), page -> {
+        });
+
+    // Links from dropped links are never discovered, so we see fewer than 13 pages
+    assertThat(summary.getDropped() > 0L, is(true));
+    assertThat(summary.getPages() < 13L, is(true));
+    assertThat(summary.getRemaining(), is(0L));
+  }
+
+  @Test
+  public void priorityTest() throws IOException {
+    List<CrawlPage> pages = new CopyOnWriteArrayList<>();
+
+    CrawlSummary summary = new Crawler(client).parallelism(1).maxDepth(1)
+        .priority(link -> link.getUrl().endsWith("/3") ? 1 : link.getUrl().endsWith("/2") ? -1 : 0)
+        .minPriority(0).crawl(List.of("https://www.example.com/a"), pages::add);
+
+    assertThat(summary.getPages(), is(3L));
+    assertThat(summary.getDropped(), is(1L));
+    assertThat(pages.get(1).getLink().getUrl(), is("https://www.example.com/a/3"));
+    assertThat(pages.get(2).getLink().getUrl(), is("https://www.example.com/a/1"));
+  }
+
+  @Test
+  public void followTest() throws IOException {
+    CrawlSummary summary = new Crawler(client).follow(Crawler.Follow.OUTLINKS)
+        .crawl(List.of("https://www.example.com/a"), page -> {
+        });
+
+    // The simulator only returns internal links
+    assertThat(summary.getPages(), is(1L));
+  }
+
+  @Test
+  public void maxPerHostTest() throws IOException {
+    simulator.latency(LatencyDistribution.uniform(Duration.ofMillis(5), Duration.ofMillis(10)));
+
+    Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+    AtomicInteger maxRunning = new AtomicInteger();
+    AtomicInteger maxRunningAnyHost = new AtomicInteger();
+    AtomicInteger total = new AtomicInteger();
+    ArachnioClient counting =
+        new DefaultArachnioClient(simulator.getBaseUrl(), simulator.getKey()) {
+          @Override
+          public ExtractedLink extractLink(Link link) {
+            String host = link.getUrl().split("/")[2];
+            int n = running.computeIfAbsent(host, h -> new AtomicInteger()).incrementAndGet();
+            maxRunning.accumulateAndGet(n, Math::max);
+            maxRunningAnyHost.accumulateAndGet(total.incrementAndGet(), Math::max);
+            try {
+              return super.extractLink(link);
+            } finally {
+              total.decrementAndGet();
+              running.get(host).decrementAndGet();
+            }
+          }
+        };
+
+    CrawlSummary summary = new Crawler(counting).parallelism(8).maxPerHost(2).maxDepth(2)
+        .crawl(List.of("https://www.example.com/a", "https://www.example.org/a",
+            "https://www.example.net/a"), page -> {
+            });
+
+    assertThat(summary.getPages(), is(39L));
+    assertThat(maxRunning.get() <= 2, is(true));
+    assertThat(maxRunningAnyHost.get() <= 6, is(true));
+  }
+
+  @Test
+  public void failureTest() throws IOException {
+    simulator.error(500, 1.0);
+    List<CrawlPage> pages = new CopyOnWriteArrayList<>();
+
+    CrawlSummary summary =
+        new Crawler(client).crawl(List.of("https://www.example.com/a"), pages::add);
+
+    assertThat(summary.getPages(), is(1L));
+    assertThat(summary.getFailures(), is(1L));
+    assertThat(pages.get(0).getResult() == null, is(true));
+    assertThat(pages.get(0).getError() != null, is(true));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void consumerFailureTest() throws IOException {
+    new Crawler(client).crawl(List.of("https://www.example.com/a"), page -> {
+      throw new IllegalStateException();
+    });
+  }
+
+  @Test
+  public void seedsOnlyTest() throws IOException {
+    Set<String> urls = ConcurrentHashMap.newKeySet();
+
+    CrawlSummary summary = new Crawler(client).maxDepth(0).crawl(
+        List.of("https://www.example.com/a", "https://www.example.com/b"),
+        page -> urls.add(page.getLink().getUrl()));
+
+    assertThat(summary.getPages(), is(2L));
+    assertThat(urls, is(Set.of("https://www.example.com/a", "https://www.example.com/b")));
+  }
+}
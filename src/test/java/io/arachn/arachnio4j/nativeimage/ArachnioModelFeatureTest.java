@@ -0,0 +1,174 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.nativeimage;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import java.io.IOException;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.arachn.arachnio4j.util.Jackson;
+import io.arachn.spi.model.LinkBatchEntry;
+
+public class ArachnioModelFeatureTest {
+  public static enum Color {
+    RED, GREEN;
+  }
+
+  @JsonDeserialize(builder = Point.Builder.class)
+  public static final class Point {
+    public static final class Builder {
+      private int x;
+
+      public Builder withX(int x) {
+        this.x = x;
+        return this;
+      }
+
+      public Point build() {
+        return new Point(x);
+      }
+    }
+
+    private final int x;
+
+    private Point(int x) {
+      this.x = x;
+    }
+
+    public int getX() {
+      return x;
+    }
+  }
+
+  @JsonSerialize(using = ShapeSerializer.class)
+  public static class Shape {
+    @JsonDeserialize(using = ColorDeserializer.class)
+    public Color color;
+  }
+
+  public static class ShapeSerializer extends JsonSerializer<Shape> {
+    @Override
+    public void serialize(Shape value, JsonGenerator gen, SerializerProvider serializers)
+        throws IOException {
+      gen.writeString(value.color.name());
+    }
+  }
+
+  public static class ColorDeserializer extends JsonDeserializer<Color> {
+    @Override
+    public Color deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+      return Color.valueOf(p.getText());
+    }
+  }
+
+  public static class RecordingRegistry implements ArachnioModelFeature.Registry {
+    public final Set<Class<?>> types = new HashSet<>();
+    public final Set<Class<?>> instantiable = new HashSet<>();
+    public final Set<Executable> executables = new HashSet<>();
+
+    @Override
+    public void register(Class<?> type) {
+      types.add(type);
+    }
+
+    @Override
+    public void registerForReflectiveInstantiation(Class<?> type) {
+      instantiable.add(type);
+    }
+
+    @Override
+    public void register(Executable... executables) {
+      this.executables.addAll(Arrays.asList(executables));
+    }
+
+    @Override
+    public void register(Field... fields) {}
+  }
+
+  @Test
+  public void modelTypesTest() {
+    Set<Class<?>> modelTypes = ArachnioModelFeature.modelTypes();
+
+    assertThat(modelTypes.containsAll(Jackson.MODEL_TYPES), is(true));
+
+    // Reachable only through LinkBatch
+    assertThat(modelTypes.contains(LinkBatchEntry.class), is(true));
+
+    assertThat(modelTypes.contains(String.class), is(false));
+  }
+
+  @Test
+  public void registerModelTypesTest() {
+    RecordingRegistry registry = new RecordingRegistry();
+    for (Class<?> type : ArachnioModelFeature.modelTypes())
+      ArachnioModelFeature.register(type, registry);
+
+    assertThat(registry.types.containsAll(Jackson.MODEL_TYPES), is(true));
+    for (Class<?> type : registry.instantiable)
+      assertThat(type.isEnum(), is(false));
+  }
+
+  @Test
+  public void registerEnumTest() throws Exception {
+    RecordingRegistry registry = new RecordingRegistry();
+    ArachnioModelFeature.register(Color.class, registry);
+
+    assertThat(registry.types, is(Set.of(Color.class)));
+    assertThat(registry.instantiable.isEmpty(), is(true));
+    assertThat(registry.executables.contains(Color.class.getMethod("valueOf", String.class)),
+        is(true));
+  }
+
+  @Test
+  public void registerBuilderTest() throws Exception {
+    RecordingRegistry registry = new RecordingRegistry();
+    ArachnioModelFeature.register(Point.class, registry);
+
+    assertThat(registry.types, is(Set.of(Point.class, Point.Builder.class)));
+    assertThat(registry.instantiable, is(Set.of(Point.Builder.class)));
+    assertThat(registry.executables.contains(Point.Builder.class.getMethod("build")), is(true));
+    assertThat(registry.executables.contains(Point.class.getDeclaredConstructor(int.class)),
+        is(true));
+  }
+
+  @Test
+  public void registerSerializersTest() {
+    RecordingRegistry registry = new RecordingRegistry();
+    ArachnioModelFeature.register(Shape.class, registry);
+
+    assertThat(registry.types,
+        is(Set.of(Shape.class, ShapeSerializer.class, ColorDeserializer.class)));
+    assertThat(registry.instantiable,
+        is(Set.of(Shape.class, ShapeSerializer.class, ColorDeserializer.class)));
+  }
+}
@@ -0,0 +1,447 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.simulator;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.arachn.arachnio4j.util.JacksonCodec;
+
+/**
+ * An embeddable stand-in for the Arachnio API. It implements the domain and link endpoints and
+ * their batch variants with synthetic, but well-formed, responses. Latency, error injection, and
+ * payload size are configurable, which makes it suitable for load testing the client without
+ * touching the real service or spending quota.
+ *
+ * <p>
+ * Requests and responses use whichever {@link JacksonCodec} matches the request
+ * {@code Content-Type}, so the simulator can also be used to compare wire formats.
+ */
+public class ArachnioSimulator implements AutoCloseable {
+  public static final String KEY_HEADER_NAME = "X-BLOBR-KEY";
+
+  private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+  static {
+    // Otherwise Nagle's algorithm adds ~40ms to every small response, which swamps everything
+    // we're trying to measure. This must be set before the first HttpServer is created.
+    if (System.getProperty("sun.net.httpserver.nodelay") == null)
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  private final String key;
+  private final AtomicLong requests = new AtomicLong();
+  private final Map<Integer, AtomicLong> responses = new ConcurrentHashMap<>();
+  private volatile LatencyDistribution latency = LatencyDistribution.none();
+  private volatile NavigableMap<Double, Integer> errors = new TreeMap<>();
+  private volatile int payloadSize = 1024;
+  private volatile int outlinksPerPage = 3;
+  private HttpServer server;
+  private ExecutorService executor;
+
+  public ArachnioSimulator(String key) {
+    this.key = requireNonNull(key);
+  }
+
+  public ArachnioSimulator latency(LatencyDistribution latency) {
+    this.latency = requireNonNull(latency);
+    return this;
+  }
+
+  /**
+   * Makes the given fraction of all requests fail with the given status code, e.g., 403, 422,
+   * 429, or 500. Rates for different status codes add up.
+   */
+  public synchronized ArachnioSimulator error(int statusCode, double rate) {
+    if (rate < 0.0)
+      throw new IllegalArgumentException("rate must not be negative");
+
+    Map<Integer, Double> rates = new TreeMap<>();
+    double previous = 0.0;
+    for (Map.Entry<Double, Integer> e : errors.entrySet()) {
+      rates.put(e.getValue(), e.getKey() - previous);
+      previous = e.getKey();
+    }
+    rates.put(statusCode, rate);
+
+    NavigableMap<Double, Integer> cumulative = new TreeMap<>();
+    double total = 0.0;
+    for (Map.Entry<Integer, Double> e : rates.entrySet()) {
+      if (e.getValue() > 0.0) {
+        total = total + e.getValue();
+        cumulative.put(total, e.getKey());
+      }
+    }
+    if (total > 1.0)
+      throw new IllegalArgumentException("total error rate exceeds 1.0");
+
+    this.errors = cumulative;
+    return this;
+  }
+
+  /**
+   * The approximate size in characters of the body text of each extracted page.
+   */
+  public ArachnioSimulator payloadSize(int payloadSize) {
+    if (payloadSize < 0)
+      throw new IllegalArgumentException("payloadSize must not be negative");
+    this.payloadSize = payloadSize;
+    return this;
+  }
+
+  /**
+   * The number of distinct outlinks in the body of each extracted page.
+   */
+  public ArachnioSimulator outlinksPerPage(int outlinksPerPage) {
+    if (outlinksPerPage < 0)
+      throw new IllegalArgumentException("outlinksPerPage must not be negative");
+    this.outlinksPerPage = outlinksPerPage;
+    return this;
+  }
+
+  /**
+   * Starts listening on an ephemeral loopback port.
+   * 
+   * @param threads the maximum number of requests served concurrently
+   */
+  public synchronized ArachnioSimulator start(int threads) throws IOException {
+    if (server != null)
+      throw new IllegalStateException("started");
+    executor = Executors.newFixedThreadPool(threads);
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+    server.setExecutor(executor);
+    route("/domains/parse", this::parseDomainName);
+    route("/domains/parse/batch", batch("hostname", this::parseDomainName));
+    route("/links/parse", this::parseLink);
+    route("/links/parse/batch", batch("url", this::parseLink));
+    route("/links/unwind", this::unwindLink);
+    route("/links/unwind/batch", batch("url", this::unwindLink));
+    route("/links/extract", this::extractLink);
+    route("/links/extract/batch", batch("url", this::extractLink));
+    server.start();
+    return this;
+  }
+
+  /**
+   * @return the base URL to give the client
+   */
+  public String getBaseUrl() {
+    InetSocketAddress address = server.getAddress();
+    return format("http://%s:%d", address.getHostString(), address.getPort());
+  }
+
+  /**
+   * @return the key
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * @return the total number of requests received
+   */
+  public long getRequestCount() {
+    return requests.get();
+  }
+
+  /**
+   * @return the number of responses sent with the given status code
+   */
+  public long getResponseCount(int statusCode) {
+    AtomicLong count = responses.get(statusCode);
+    return count == null ? 0L : count.get();
+  }
+
+  @Override
+  public synchronized void close() {
+    if (server != null) {
+      server.stop(0);
+      executor.shutdownNow();
+      try {
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      server = null;
+      executor = null;
+    }
+  }
+
+  private void route(String path, Function<JsonNode, JsonNode> handler) {
+    server.createContext(path, exchange -> {
+      try {
+        handle(exchange, path, handler);
+      } finally {
+        exchange.close();
+      }
+    });
+  }
+
+  private void handle(HttpExchange exchange, String path, Function<JsonNode, JsonNode> handler)
+      throws IOException {
+    requests.incrementAndGet();
+
+    // Always drain the request body, or the connection can't be reused
+    byte[] body;
+    try (InputStream in = exchange.getRequestBody()) {
+      body = in.readAllBytes();
+    }
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long delay = latency.sampleNanos(random);
+    if (delay > 0L) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+
+    // HttpServer matches contexts by prefix, so /links/parse also receives /links/parse/batch
+    // if the latter is not registered. We register both, but be strict anyway.
+    if (!exchange.getRequestURI().getPath().equals(path)) {
+      respond(exchange, 404, null, null);
+      return;
+    }
+    if (!exchange.getRequestMethod().equals("POST")) {
+      respond(exchange, 405, null, null);
+      return;
+    }
+    if (!key.equals(exchange.getRequestHeaders().getFirst(KEY_HEADER_NAME))) {
+      respond(exchange, 403, null, null);
+      return;
+    }
+
+    Map.Entry<Double, Integer> error = errors.higherEntry(random.nextDouble());
+    if (error != null) {
+      respond(exchange, error.getValue(), null, null);
+      return;
+    }
+
+    JacksonCodec codec = (JacksonCodec) JacksonCodec
+        .forContentType(exchange.getRequestHeaders().getFirst("Content-Type"))
+        .orElse(JacksonCodec.JSON);
+
+    JsonNode request;
+    try {
+      request = codec.getMapper().readTree(body);
+    } catch (IOException e) {
+      respond(exchange, 400, null, null);
+      return;
+    }
+
+    JsonNode response;
+    try {
+      response = handler.apply(request);
+    } catch (IllegalArgumentException e) {
+      respond(exchange, 422, null, null);
+      return;
+    }
+
+    respond(exchange, 200, codec, response);
+  }
+
+  private void respond(HttpExchange exchange, int statusCode, JacksonCodec codec, JsonNode body)
+      throws IOException {
+    responses.computeIfAbsent(statusCode, k -> new AtomicLong()).incrementAndGet();
+    if (body == null) {
+      exchange.sendResponseHeaders(statusCode, -1);
+    } else {
+      ObjectMapper mapper = codec.getMapper();
+      byte[] bytes = mapper.writeValueAsBytes(body);
+      exchange.getResponseHeaders().set("Content-Type", codec.getContentType());
+      exchange.sendResponseHeaders(statusCode, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    }
+  }
+
+  private Function<JsonNode, JsonNode> batch(String field, Function<JsonNode, JsonNode> handler) {
+    return request -> {
+      ArrayNode entries = NODES.arrayNode();
+      for (Iterator<JsonNode> i = request.path("entries").elements(); i.hasNext();) {
+        JsonNode entry = i.next();
+        ObjectNode single = NODES.objectNode();
+        single.set(field, entry.path(field));
+        ObjectNode result = NODES.objectNode();
+        result.set("id", entry.path("id"));
+        result.set("result", handler.apply(single));
+        entries.add(result);
+      }
+      ObjectNode result = NODES.objectNode();
+      result.set("entries", entries);
+      return result;
+    };
+  }
+
+  private JsonNode parseDomainName(JsonNode request) {
+    return parsedDomainName(text(request, "hostname"));
+  }
+
+  private JsonNode parseLink(JsonNode request) {
+    return parsedLink(text(request, "url"));
+  }
+
+  private JsonNode unwindLink(JsonNode request) {
+    return unwoundLink(text(request, "url"));
+  }
+
+  private JsonNode extractLink(JsonNode request) {
+    String url = text(request, "url");
+    URI uri = uri(url);
+
+    StringBuilder bodyText = new StringBuilder(payloadSize + 64);
+    while (bodyText.length() < payloadSize)
+      bodyText.append("The quick brown spider jumps over the lazy web crawler. ");
+    bodyText.setLength(payloadSize);
+
+    ArrayNode bodyLinks = NODES.arrayNode();
+    String base = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    for (int i = 1; i <= outlinksPerPage; i++) {
+      ObjectNode hyperlink = NODES.objectNode();
+      hyperlink.set("href", parsedLink(format("%s/%d", base, i)));
+      hyperlink.putNull("rel");
+      hyperlink.put("outlink", false);
+      hyperlink.put("anchorText", format("Link %d", i));
+      bodyLinks.add(hyperlink);
+    }
+
+    ObjectNode entity = NODES.objectNode();
+    entity.put("entityType", "webpage");
+    entity.put("webpageType", "article");
+    entity.put("title", format("Simulated page at %s", uri.getPath()));
+    entity.put("description", "A simulated page");
+    entity.put("bodyText", bodyText.toString());
+    entity.set("bodyLinks", bodyLinks);
+
+    ObjectNode result = NODES.objectNode();
+    result.set("link", unwoundLink(url));
+    result.set("entity", entity);
+    return result;
+  }
+
+  private static JsonNode unwoundLink(String url) {
+    ObjectNode result = NODES.objectNode();
+    result.set("original", parsedLink(url));
+    result.set("unwound", parsedLink(url));
+    result.put("outcome", "success2xx");
+    result.put("canonical", true);
+    return result;
+  }
+
+  private static JsonNode parsedLink(String url) {
+    URI uri = uri(url);
+    if (uri.getScheme() == null || uri.getHost() == null)
+      throw new IllegalArgumentException(url);
+
+    ObjectNode host = NODES.objectNode();
+    host.put("type", "domain");
+    host.set("domain", parsedDomainName(uri.getHost()));
+
+    ObjectNode authority = NODES.objectNode();
+    authority.set("host", host);
+    if (uri.getPort() == -1)
+      authority.putNull("port");
+    else
+      authority.put("port", uri.getPort());
+
+    ArrayNode queryParameters = NODES.arrayNode();
+    if (uri.getRawQuery() != null) {
+      for (String parameter : uri.getRawQuery().split("&")) {
+        int equals = parameter.indexOf('=');
+        ObjectNode qp = NODES.objectNode();
+        qp.put("name", equals == -1 ? parameter : parameter.substring(0, equals));
+        if (equals == -1)
+          qp.putNull("value");
+        else
+          qp.put("value", parameter.substring(equals + 1));
+        queryParameters.add(qp);
+      }
+    }
+
+    ObjectNode result = NODES.objectNode();
+    result.put("link", url);
+    result.put("scheme", uri.getScheme().toLowerCase());
+    result.set("authority", authority);
+    result.put("path", uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/"
+        : uri.getRawPath());
+    result.set("queryParameters", queryParameters);
+    return result;
+  }
+
+  private static JsonNode parsedDomainName(String hostname) {
+    if (hostname == null)
+      throw new IllegalArgumentException(hostname);
+
+    // Keep trailing empty labels, so "foo." is rejected rather than read as "foo"
+    String[] labels = hostname.toLowerCase().split("\\.", -1);
+    if (labels.length < 2)
+      throw new IllegalArgumentException(hostname);
+    for (String label : labels)
+      if (label.isEmpty())
+        throw new IllegalArgumentException(hostname);
+
+    ObjectNode result = NODES.objectNode();
+    result.put("registrySuffix", labels[labels.length - 1]);
+    result.put("publicSuffix", labels[labels.length - 2] + "." + labels[labels.length - 1]);
+    result.put("hostname", hostname.toLowerCase());
+    return result;
+  }
+
+  private static String text(JsonNode node, String field) {
+    JsonNode value = node.path(field);
+    if (!value.isTextual())
+      throw new IllegalArgumentException(field);
+    return value.asText();
+  }
+
+  private static URI uri(String url) {
+    try {
+      return URI.create(url);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(url, e);
+    }
+  }
+}
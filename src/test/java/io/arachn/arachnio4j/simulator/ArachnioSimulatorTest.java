@@ -0,0 +1,144 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.simulator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import io.arachn.arachnio4j.ArachnioClient;
+import io.arachn.arachnio4j.client.DefaultArachnioClient;
+import io.arachn.arachnio4j.exception.ForbiddenArachnioException;
+import io.arachn.arachnio4j.exception.UnrecognizedStatusArachnioException;
+import io.arachn.arachnio4j.util.JacksonCodec;
+import io.arachn.spi.model.LinkBatchEntry;
+import io.arachn.spi.model.ParsedDomainName;
+
+public class ArachnioSimulatorTest {
+  public ArachnioSimulator simulator;
+
+  @Before
+  public void setupArachnioSimulatorTest() throws Exception {
+    simulator = new ArachnioSimulator("key").start(8);
+  }
+
+  @After
+  public void cleanupArachnioSimulatorTest() {
+    simulator.close();
+  }
+
+  @Test
+  public void endpointsTest() {
+    ArachnioClient client = new DefaultArachnioClient(simulator.getBaseUrl(), simulator.getKey());
+
+    assertThat(client.parseDomainName("www.google.com"), is(new ParsedDomainName()
+        .registrySuffix("com").publicSuffix("google.com").hostname("www.google.com")));
+    assertThat(client.parseLink("https://www.google.com/search?q=hello").getLink(),
+        is("https://www.google.com/search?q=hello"));
+    assertThat(client.unwindLink("https://www.google.com/").getCanonical(), is(true));
+    assertThat(client.extractLink("https://www.google.com/").getLink().getUnwound().getLink(),
+        is("https://www.google.com/"));
+
+    List<LinkBatchEntry> entries =
+        List.of(new LinkBatchEntry().id("1").url("https://www.google.com/"));
+    client.parseLinkBatch(entries);
+    client.unwindLinkBatch(entries);
+
+    assertThat(simulator.getResponseCount(200), is(6L));
+  }
+
+  @Test
+  public void binaryCodecTest() {
+    ArachnioClient client = new DefaultArachnioClient(simulator.getBaseUrl(), simulator.getKey(),
+        JacksonCodec.CBOR);
+
+    assertThat(client.parseDomainName("www.google.com").getHostname(), is("www.google.com"));
+  }
+
+  @Test
+  public void wrongKeyTest() {
+    ArachnioClient client = new DefaultArachnioClient(simulator.getBaseUrl(), "wrong");
+    try {
+      client.parseDomainName("www.google.com");
+      throw new AssertionError("expected failure");
+    } catch (UncheckedIOException e) {
+      assertThat(e.getCause() instanceof ForbiddenArachnioException, is(true));
+    }
+  }
+
+  @Test
+  public void errorInjectionTest() {
+    simulator.error(429, 1.0);
+
+    ArachnioClient client = new DefaultArachnioClient(simulator.getBaseUrl(), simulator.getKey());
+    try {
+      client.parseDomainName("www.google.com");
+      throw new AssertionError("expected failure");
+    } catch (UncheckedIOException e) {
+      assertThat(((UnrecognizedStatusArachnioException) e.getCause()).getStatusCode(), is(429));
+    }
+  }
+
+  @Test
+  public void invalidInputTest() {
+    ArachnioClient client = new DefaultArachnioClient(simulator.getBaseUrl(), simulator.getKey());
+    try {
+      client.parseDomainName("localhost");
+      throw new AssertionError("expected failure");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertThat(simulator.getResponseCount(422), is(1L));
+
+    // Empty labels are invalid input too, not server errors
+    for (String hostname : List.of("foo.", ".com", "www..example.com", ".")) {
+      try {
+        client.parseDomainName(hostname);
+        throw new AssertionError("expected failure for " + hostname);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+    assertThat(simulator.getResponseCount(422), is(5L));
+    assertThat(simulator.getResponseCount(500), is(0L));
+  }
+
+  @Test
+  public void loadTest() throws Exception {
+    simulator.latency(LatencyDistribution.uniform(Duration.ofMillis(1), Duration.ofMillis(5)))
+        .error(500, 0.1);
+
+    ArachnioClient client = new DefaultArachnioClient(simulator.getBaseUrl(), simulator.getKey());
+
+    LoadReport report = new LoadHarness(client, LoadHarness.Operation.UNWIND_LINK, 4)
+        .run(Duration.ofMillis(500));
+
+    assertThat(report.getSuccesses() > 0, is(true));
+    assertThat(report.getSuccesses() + report.getFailures(), is(simulator.getRequestCount()));
+    assertThat(report.getLatencyPercentile(50.0).compareTo(Duration.ofMillis(1)) >= 0, is(true));
+    assertThat(
+        report.getLatencyPercentile(99.0).compareTo(report.getLatencyPercentile(50.0)) >= 0,
+        is(true));
+  }
+}
@@ -0,0 +1,64 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.simulator;
+
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * How long the {@link ArachnioSimulator} waits before answering each request.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+  public static LatencyDistribution none() {
+    return r -> 0L;
+  }
+
+  public static LatencyDistribution constant(Duration latency) {
+    final long nanos = latency.toNanos();
+    return r -> nanos;
+  }
+
+  public static LatencyDistribution uniform(Duration min, Duration max) {
+    final long lo = min.toNanos();
+    final long span = max.toNanos() - lo;
+    if (span < 0)
+      throw new IllegalArgumentException("max < min");
+    return r -> lo + (long) (r.nextDouble() * span);
+  }
+
+  public static LatencyDistribution exponential(Duration mean) {
+    final double nanos = mean.toNanos();
+    return r -> (long) (-Math.log(1.0 - r.nextDouble()) * nanos);
+  }
+
+  /**
+   * A long-tailed distribution, which is what real web service latency usually looks like.
+   *
+   * @param median the 50th percentile
+   * @param sigma the standard deviation of the underlying normal distribution, e.g., 0.5
+   */
+  public static LatencyDistribution logNormal(Duration median, double sigma) {
+    final double mu = Math.log(median.toNanos());
+    return r -> (long) Math.exp(mu + sigma * r.nextGaussian());
+  }
+
+  public long sampleNanos(Random random);
+}
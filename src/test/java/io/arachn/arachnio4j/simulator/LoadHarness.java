@@ -0,0 +1,288 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.simulator;
+
+import static java.util.Objects.requireNonNull;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import io.arachn.arachnio4j.ArachnioClient;
+import io.arachn.arachnio4j.client.DefaultArachnioClient;
+import io.arachn.arachnio4j.client.RequestScheduler;
+import io.arachn.arachnio4j.transport.ApacheHttpClient5Transport;
+import io.arachn.arachnio4j.transport.ArachnioTransport;
+import io.arachn.arachnio4j.transport.JdkHttpClientTransport;
+import io.arachn.arachnio4j.util.Codec;
+import io.arachn.arachnio4j.util.JacksonCodec;
+import io.arachn.spi.model.LinkBatchEntry;
+
+/**
+ * Drives an {@link ArachnioClient} with a fixed number of concurrent callers for a fixed time and
+ * reports throughput and latency percentiles. Run {@link #main(String[])} to load test the client
+ * against a local {@link ArachnioSimulator}, for example:
+ * 
+ * <pre>
+ * java ... io.arachn.arachnio4j.simulator.LoadHarness \
+ *     operation=unwindBatch concurrency=64 seconds=30 latencyMillis=20 codec=smile transport=apache
+ * </pre>
+ *
+ * <p>
+ * Running the same arguments with {@code transport=jdk} and {@code transport=apache} compares the
+ * two built-in transports under identical load.
+ */
+public class LoadHarness {
+  public static enum Operation {
+    PARSE_DOMAIN {
+      @Override
+      public void call(ArachnioClient client, int n) {
+        client.parseDomainName(String.format("www%d.example.com", n));
+      }
+    },
+    PARSE_LINK {
+      @Override
+      public void call(ArachnioClient client, int n) {
+        client.parseLink(url(n));
+      }
+    },
+    UNWIND_LINK {
+      @Override
+      public void call(ArachnioClient client, int n) {
+        client.unwindLink(url(n));
+      }
+    },
+    EXTRACT_LINK {
+      @Override
+      public void call(ArachnioClient client, int n) {
+        client.extractLink(url(n));
+      }
+    },
+    PARSE_BATCH {
+      @Override
+      public void call(ArachnioClient client, int n) {
+        client.parseLinkBatch(batch(n));
+      }
+    },
+    UNWIND_BATCH {
+      @Override
+      public void call(ArachnioClient client, int n) {
+        client.unwindLinkBatch(batch(n));
+      }
+    };
+
+    public static final int BATCH_SIZE = 100;
+
+    public abstract void call(ArachnioClient client, int n);
+
+    private static String url(int n) {
+      return String.format("https://www.example.com/articles/%d", n);
+    }
+
+    private static List<LinkBatchEntry> batch(int n) {
+      List<LinkBatchEntry> result = new ArrayList<>(BATCH_SIZE);
+      for (int i = 0; i < BATCH_SIZE; i++)
+        result.add(new LinkBatchEntry().id(Integer.toString(i)).url(url(n * BATCH_SIZE + i)));
+      return result;
+    }
+  }
+
+  private final ArachnioClient client;
+  private final Operation operation;
+  private final int concurrency;
+
+  public LoadHarness(ArachnioClient client, Operation operation, int concurrency) {
+    if (concurrency < 1)
+      throw new IllegalArgumentException("concurrency must be positive");
+    this.client = requireNonNull(client);
+    this.operation = requireNonNull(operation);
+    this.concurrency = concurrency;
+  }
+
+  /**
+   * Calls the client in a closed loop from each of {@code concurrency} threads until the given
+   * duration elapses, then waits for in-flight calls to finish.
+   */
+  public LoadReport run(Duration duration) throws InterruptedException {
+    final long deadline = System.nanoTime() + duration.toNanos();
+    final AtomicLong sequence = new AtomicLong();
+    final AtomicLong successes = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+    final long[][] latencies = new long[concurrency][];
+    final CountDownLatch done = new CountDownLatch(concurrency);
+
+    final long start = System.nanoTime();
+    for (int t = 0; t < concurrency; t++) {
+      final int thread = t;
+      Thread worker = new Thread(() -> {
+        LongList mine = new LongList();
+        try {
+          while (System.nanoTime() - deadline < 0L) {
+            int n = (int) sequence.getAndIncrement();
+            long t0 = System.nanoTime();
+            try {
+              operation.call(client, n);
+              successes.incrementAndGet();
+            } catch (RuntimeException e) {
+              failures.incrementAndGet();
+            }
+            mine.add(System.nanoTime() - t0);
+          }
+        } finally {
+          latencies[thread] = mine.toArray();
+          done.countDown();
+        }
+      }, "load-harness-" + t);
+      worker.setDaemon(true);
+      worker.start();
+    }
+    done.await();
+    final long elapsed = System.nanoTime() - start;
+
+    int total = 0;
+    for (long[] ls : latencies)
+      total = total + ls.length;
+    long[] all = new long[total];
+    int offset = 0;
+    for (long[] ls : latencies) {
+      System.arraycopy(ls, 0, all, offset, ls.length);
+      offset = offset + ls.length;
+    }
+
+    return new LoadReport(successes.get(), failures.get(), Duration.ofNanos(elapsed), all);
+  }
+
+  /**
+   * Arguments are {@code name=value} pairs. Recognized names are {@code operation},
+   * {@code concurrency}, {@code seconds}, {@code latencyMillis}, {@code errorRate},
+   * {@code payloadSize}, {@code codec}, and {@code transport}.
+   */
+  public static void main(String[] args) throws Exception {
+    Operation operation = Operation.UNWIND_LINK;
+    int concurrency = 32;
+    int seconds = 10;
+    long latencyMillis = 10L;
+    double errorRate = 0.0;
+    int payloadSize = 4096;
+    Codec codec = JacksonCodec.JSON;
+    String transportName = "jdk";
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      if (equals == -1)
+        throw new IllegalArgumentException("expected name=value, got " + arg);
+      String name = arg.substring(0, equals);
+      String value = arg.substring(equals + 1);
+      switch (name) {
+        case "operation":
+          operation = Operation.valueOf(
+              value.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase(Locale.ROOT));
+          break;
+        case "concurrency":
+          concurrency = Integer.parseInt(value);
+          break;
+        case "seconds":
+          seconds = Integer.parseInt(value);
+          break;
+        case "latencyMillis":
+          latencyMillis = Long.parseLong(value);
+          break;
+        case "errorRate":
+          errorRate = Double.parseDouble(value);
+          break;
+        case "payloadSize":
+          payloadSize = Integer.parseInt(value);
+          break;
+        case "codec":
+          codec = codec(value);
+          break;
+        case "transport":
+          transportName = value;
+          break;
+        default:
+          throw new IllegalArgumentException("unrecognized argument " + name);
+      }
+    }
+
+    try (ArachnioSimulator simulator = new ArachnioSimulator("key");
+        ArachnioTransport transport = transport(transportName, concurrency)) {
+      simulator
+          .latency(LatencyDistribution.logNormal(Duration.ofMillis(latencyMillis), 0.5))
+          .error(500, errorRate / 2.0).error(429, errorRate / 2.0).payloadSize(payloadSize)
+          .start(Math.max(concurrency, 1) * 2);
+
+      ArachnioClient client = new DefaultArachnioClient(transport, simulator.getBaseUrl(),
+          simulator.getKey(), codec, RequestScheduler.unbounded());
+
+      // Warm up the JIT and the connection pool so they don't pollute the numbers
+      new LoadHarness(client, operation, concurrency).run(Duration.ofSeconds(2));
+
+      LoadReport report =
+          new LoadHarness(client, operation, concurrency).run(Duration.ofSeconds(seconds));
+
+      System.out.println(String.format("operation=%s concurrency=%d codec=%s transport=%s",
+          operation, concurrency, codec.getContentType(), transportName));
+      System.out.println(report);
+    }
+  }
+
+  private static Codec codec(String name) {
+    switch (name.toLowerCase(Locale.ROOT)) {
+      case "json":
+        return JacksonCodec.JSON;
+      case "smile":
+        return JacksonCodec.SMILE;
+      case "cbor":
+        return JacksonCodec.CBOR;
+      default:
+        throw new IllegalArgumentException("unrecognized codec " + name);
+    }
+  }
+
+  private static ArachnioTransport transport(String name, int concurrency) {
+    switch (name.toLowerCase(Locale.ROOT)) {
+      case "jdk":
+        return new JdkHttpClientTransport();
+      case "apache":
+        return new ApacheHttpClient5Transport(Math.max(concurrency, 1));
+      default:
+        throw new IllegalArgumentException("unrecognized transport " + name);
+    }
+  }
+
+  /**
+   * Avoids boxing every sample in the hot loop.
+   */
+  private static final class LongList {
+    private long[] values = new long[1024];
+    private int size = 0;
+
+    public void add(long value) {
+      if (size == values.length)
+        values = Arrays.copyOf(values, size * 2);
+      values[size++] = value;
+    }
+
+    public long[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+}
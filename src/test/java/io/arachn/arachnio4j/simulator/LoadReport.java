@@ -0,0 +1,99 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.simulator;
+
+import static java.lang.String.format;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * The outcome of one {@link LoadHarness} run.
+ */
+public class LoadReport {
+  private final long successes;
+  private final long failures;
+  private final Duration elapsed;
+  private final long[] sortedLatencyNanos;
+
+  public LoadReport(long successes, long failures, Duration elapsed, long[] latencyNanos) {
+    this.successes = successes;
+    this.failures = failures;
+    this.elapsed = elapsed;
+    this.sortedLatencyNanos = latencyNanos.clone();
+    Arrays.sort(this.sortedLatencyNanos);
+  }
+
+  /**
+   * @return the successes
+   */
+  public long getSuccesses() {
+    return successes;
+  }
+
+  /**
+   * @return the failures
+   */
+  public long getFailures() {
+    return failures;
+  }
+
+  /**
+   * @return the elapsed
+   */
+  public Duration getElapsed() {
+    return elapsed;
+  }
+
+  /**
+   * @return completed requests, successful or not, per second
+   */
+  public double getThroughput() {
+    double seconds = elapsed.toNanos() / 1e9;
+    return seconds == 0.0 ? 0.0 : (successes + failures) / seconds;
+  }
+
+  /**
+   * Nearest-rank percentile over all requests, successful or not.
+   * 
+   * @param percentile between 0 and 100
+   */
+  public Duration getLatencyPercentile(double percentile) {
+    if (percentile < 0.0 || percentile > 100.0)
+      throw new IllegalArgumentException("percentile must be between 0 and 100");
+    if (sortedLatencyNanos.length == 0)
+      return Duration.ZERO;
+    int rank = (int) Math.ceil(percentile / 100.0 * sortedLatencyNanos.length);
+    return Duration.ofNanos(sortedLatencyNanos[Math.max(rank, 1) - 1]);
+  }
+
+  @Override
+  public String toString() {
+    return format(
+        "requests=%d failures=%d elapsed=%.3fs throughput=%.1f/s p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms",
+        successes + failures, failures, elapsed.toNanos() / 1e9, getThroughput(),
+        millis(getLatencyPercentile(50.0)), millis(getLatencyPercentile(90.0)),
+        millis(getLatencyPercentile(99.0)), millis(getLatencyPercentile(99.9)),
+        millis(getLatencyPercentile(100.0)));
+  }
+
+  private static double millis(Duration d) {
+    return d.toNanos() / 1e6;
+  }
+}
@@ -0,0 +1,170 @@
+/*-
+ * =================================LICENSE_START==================================
+ * arachnio4j
+ * ====================================SECTION=====================================
+ * Copyright (C) 2022 - 2023 Arachnio
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package io.arachn.arachnio4j.transport;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.arachn.arachnio4j.ArachnioClient;
+import io.arachn.arachnio4j.client.DefaultArachnioClient;
+import io.arachn.arachnio4j.client.RequestScheduler;
+import io.arachn.arachnio4j.simulator.ArachnioSimulator;
+import io.arachn.arachnio4j.util.Jackson;
+import io.arachn.arachnio4j.util.JacksonCodec;
+import io.arachn.spi.model.ParsedDomainName;
+
+/**
+ * Every transport must map requests and responses the same way, so every transport runs these
+ * tests.
+ */
+public abstract class AbstractTransportTest {
+  public ArachnioSimulator simulator;
+  public ArachnioTransport transport;
+
+  protected abstract ArachnioTransport newTransport();
+
+  @Before
+  public void setupAbstractTransportTest() throws Exception {
+    simulator = new ArachnioSimulator("key").start(4);
+    transport = newTransport();
+  }
+
+  @After
+  public void cleanupAbstractTransportTest() throws IOException {
+    transport.close();
+    simulator.close();
+  }
+
+  @Test
+  public void sendTest() throws IOException {
+    try (TransportResponse response = transport.send(request("/domains/parse", simulator.getKey(),
+        "{\"hostname\":\"www.google.com\"}"))) {
+      assertThat(response.getStatusCode(), is(200));
+      assertThat(response.getContentType().map(JacksonCodec::forContentType),
+          is(Optional.of(Optional.of(JacksonCodec.JSON))));
+      assertThat(JacksonCodec.JSON.deserialize(ParsedDomainName.class, response.getBody())
+          .getHostname(), is("www.google.com"));
+    }
+  }
+
+  @Test
+  public void largeBodyTest() throws IOException {
+    simulator.payloadSize(1024 * 1024);
+
+    try (TransportResponse response = transport.send(request("/links/extract",
+        simulator.getKey(), "{\"url\":\"https://www.example.com/\"}"))) {
+      assertThat(response.getStatusCode(), is(200));
+      JsonNode body = Jackson.MAPPER.readTree(response.getBody());
+      assertThat(body.path("entity").path("bodyText").asText().length(), is(1024 * 1024));
+    }
+  }
+
+  @Test
+  public void forbiddenTest() throws IOException {
+    try (TransportResponse response =
+        transport.send(request("/domains/parse", "wrong", "{\"hostname\":\"www.google.com\"}"))) {
+      assertThat(response.getStatusCode(), is(403));
+    }
+  }
+
+  @Test
+  public void errorStatusTest() throws IOException {
+    simulator.error(500, 1.0);
+
+    try (TransportResponse response = transport.send(request("/domains/parse",
+        simulator.getKey(), "{\"hostname\":\"www.google.com\"}"))) {
+      assertThat(response.getStatusCode(), is(500));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void unreachableTest() throws IOException {
+    transport.send(new TransportRequest(URI.create(unreachableBaseUrl() + "/domains/parse"),
+        Map.of(), new byte[0]));
+  }
+
+  @Test
+  public void interruptTest() throws IOException {
+    Thread.currentThread().interrupt();
+    try {
+      transport.send(request("/domains/parse", simulator.getKey(),
+          "{\"hostname\":\"www.google.com\"}")).close();
+      throw new AssertionError("expected InterruptedIOException");
+    } catch (InterruptedIOException e) {
+      assertThat(Thread.currentThread().isInterrupted(), is(true));
+    } finally {
+      Thread.interrupted();
+    }
+  }
+
+  @Test
+  public void clientTest() {
+    ArachnioClient client = new DefaultArachnioClient(transport, simulator.getBaseUrl(),
+        simulator.getKey(), JacksonCodec.SMILE, RequestScheduler.unbounded());
+
+    assertThat(client.parseDomainName("www.google.com").getHostname(), is("www.google.com"));
+    assertThat(simulator.getResponseCount(200), is(1L));
+  }
+
+  @Test
+  public void warmUpTest() throws IOException {
+    transport.warmUp(URI.create(simulator.getBaseUrl() + "/"), 4);
+
+    DefaultArachnioClient client = new DefaultArachnioClient(transport, simulator.getBaseUrl(),
+        simulator.getKey(), JacksonCodec.SMILE, RequestScheduler.unbounded());
+    client.warmUp(4);
+
+    // Warming up is not an API call
+    assertThat(simulator.getResponseCount(200), is(0L));
+    assertThat(client.parseDomainName("www.google.com").getHostname(), is("www.google.com"));
+  }
+
+  @Test(expected = UncheckedIOException.class)
+  public void warmUpUnreachableTest() throws IOException {
+    new DefaultArachnioClient(transport, unreachableBaseUrl(), "key", JacksonCodec.JSON,
+        RequestScheduler.unbounded()).warmUp();
+  }
+
+  private TransportRequest request(String path, String key, String body) {
+    return new TransportRequest(URI.create(simulator.getBaseUrl() + path),
+        Map.of(ArachnioSimulator.KEY_HEADER_NAME, key, "Content-Type",
+            JacksonCodec.JSON_CONTENT_TYPE),
+        body.getBytes(UTF_8));
+  }
+
+  private static String unreachableBaseUrl() throws IOException {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    return "http://127.0.0.1:" + port;
+  }
+}